@@ -0,0 +1,97 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.coryjreid.modpackupdater.json.InstalledManifest;
+import com.coryjreid.modpackupdater.json.Json;
+import com.coryjreid.modpackupdater.json.Mod;
+
+/**
+ * Generates the synthetic manifests, mods and folder trees used by the benchmarks.
+ */
+final class BenchmarkData {
+    private BenchmarkData() {}
+
+    static List<Mod> generateMods(final int count, final String downloadUrlPrefix) {
+        final List<Mod> mods = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            mods.add(Mod.builder()
+                .setModProjectId(100000 + i)
+                .setModDisplayName("Benchmark Mod " + i)
+                .setModFileName("benchmark-mod-" + i + "-1.0.0.jar")
+                .setModDownloadUrl(downloadUrlPrefix + "benchmark-mod-" + i + "-1.0.0.jar")
+                .setModFileLength(250000 + i)
+                .setModFileId(3000000 + i)
+                .build());
+        }
+        return mods;
+    }
+
+    /**
+     * @return a copy of {@code mods} where every tenth mod has a new file and every twentieth is swapped for a new mod
+     */
+    static List<Mod> generateUpdatedMods(final List<Mod> mods) {
+        final List<Mod> updated = new ArrayList<>(mods.size());
+        for (int i = 0; i < mods.size(); i++) {
+            final Mod mod = mods.get(i);
+            if (i % 20 == 0) {
+                updated.add(
+                    mod.toBuilder().setModProjectId(900000 + i).setModFileName("swapped-" + i + ".jar").build());
+            } else if (i % 10 == 0) {
+                updated.add(mod.toBuilder().setModFileId(mod.getFileId() + 1).build());
+            } else {
+                updated.add(mod);
+            }
+        }
+        return updated;
+    }
+
+    static void writeModpackManifest(final Path file, final List<Mod> mods) throws IOException {
+        final Map<String, Object> modLoader = new HashMap<>();
+        modLoader.put("id", "forge-36.1.0");
+        modLoader.put("primary", true);
+        final Map<String, Object> minecraft = new HashMap<>();
+        minecraft.put("version", "1.16.5");
+        minecraft.put("modLoaders", List.of(modLoader));
+
+        final Map<String, Object> manifest = new HashMap<>();
+        manifest.put("minecraft", minecraft);
+        manifest.put("manifestType", "minecraftModpack");
+        manifest.put("manifestVersion", 1);
+        manifest.put("name", "Benchmark Pack");
+        manifest.put("version", "1.0.0");
+        manifest.put("author", "benchmark");
+        manifest.put("projectID", 1);
+        manifest.put("files", mods);
+        Json.MAPPER.writeValue(file.toFile(), manifest);
+    }
+
+    static void writeInstalledManifest(final Path file, final List<Mod> mods) throws IOException {
+        InstalledManifest.writeToFile(file.toFile(), InstalledManifest.builder().setMods(mods).build());
+    }
+
+    /**
+     * Creates a config-like tree of {@code directories} folders holding {@code filesPerDirectory} small files each.
+     */
+    static void generateFolderTree(final Path root, final int directories, final int filesPerDirectory)
+        throws IOException {
+
+        final Random random = new Random(directories * 31L + filesPerDirectory);
+        for (int d = 0; d < directories; d++) {
+            final Path directory = root.resolve("mod" + d).resolve("nested");
+            Files.createDirectories(directory);
+            for (int f = 0; f < filesPerDirectory; f++) {
+                final byte[] contents = new byte[512 + random.nextInt(8192)];
+                random.nextBytes(contents);
+                Files.write(directory.resolve("config" + f + ".toml"), contents);
+            }
+        }
+    }
+}
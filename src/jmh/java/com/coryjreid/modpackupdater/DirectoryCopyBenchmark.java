@@ -0,0 +1,105 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures updating a synthetic config tree: the original delete-and-copy, a full sync into an empty folder, and a sync
+ * where nothing changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DirectoryCopyBenchmark {
+    @Param({"2000"})
+    private int mFileCount;
+
+    private Path mDirectory;
+    private Path mSource;
+    private Path mTarget;
+    private Path mSyncedTarget;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        mDirectory = Files.createTempDirectory("copy-benchmark");
+        mSource = mDirectory.resolve("source");
+        mTarget = mDirectory.resolve("target");
+        mSyncedTarget = mDirectory.resolve("synced");
+        BenchmarkData.generateFolderTree(mSource, mFileCount / 20, 20);
+        new DirectorySync(false).sync(mSource, mSyncedTarget);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws IOException {
+        FileOperations.deleteRecursively(mTarget);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileOperations.deleteRecursively(mDirectory);
+    }
+
+    /**
+     * The walk-and-copy the server root update used before {@link DirectorySync}, kept as a baseline.
+     */
+    @Benchmark
+    public void legacyCopyDirectoryContents() throws IOException {
+        Files.walkFileTree(mSource, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                throws IOException {
+
+                final Path path = mTarget.resolve(mSource.relativize(dir));
+                if (!path.toFile().exists()) {
+                    Files.createDirectory(path);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, mTarget.resolve(mSource.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Benchmark
+    public void syncIntoEmptyFolder() throws IOException {
+        new DirectorySync(false).sync(mSource, mTarget);
+    }
+
+    @Benchmark
+    public void syncIntoEmptyFolderWithHardLinks() throws IOException {
+        new DirectorySync(false, DirectorySync.CopyMode.HARDLINK, Runtime.getRuntime().availableProcessors())
+            .sync(mSource, mTarget);
+    }
+
+    @Benchmark
+    public void syncUnchangedFolder() throws IOException {
+        new DirectorySync(false).sync(mSource, mSyncedTarget);
+    }
+}
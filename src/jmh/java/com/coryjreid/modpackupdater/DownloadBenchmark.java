@@ -0,0 +1,121 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.coryjreid.modpackupdater.json.Mod;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures downloading a batch of mods from a local in-process HTTP server, comparing {@link ModDownloader} against
+ * the original sequential 4 KB stream copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DownloadBenchmark {
+    private static final int MOD_FILE_LENGTH = 2 * 1024 * 1024;
+
+    @Param({"50"})
+    private int mModCount;
+
+    @Param({"1", "4"})
+    private int mConcurrency;
+
+    private HttpServer mServer;
+    private Path mDirectory;
+    private Path mDownloadFolder;
+    private List<Mod> mMods;
+    private HttpTransport mHttpTransport;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        final byte[] contents = new byte[MOD_FILE_LENGTH];
+        new Random(42).nextBytes(contents);
+
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, contents.length);
+            try (final OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(contents);
+            }
+        });
+        mServer.start();
+
+        final String urlPrefix = "http://localhost:" + mServer.getAddress().getPort() + "/";
+        mMods = BenchmarkData.generateMods(mModCount, urlPrefix).stream()
+            .map(mod -> mod.toBuilder().setModFileLength(MOD_FILE_LENGTH).build())
+            .collect(Collectors.toList());
+        mDirectory = Files.createTempDirectory("download-benchmark");
+        mDownloadFolder = mDirectory.resolve("mods");
+        mHttpTransport = new HttpTransport(Duration.ofSeconds(10), Duration.ofSeconds(30));
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws IOException {
+        FileOperations.deleteRecursively(mDownloadFolder);
+        Files.createDirectories(mDownloadFolder);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mServer.stop(0);
+        FileOperations.deleteRecursively(mDirectory);
+    }
+
+    @Benchmark
+    public void modDownloader() throws IOException {
+        new ModDownloader(mConcurrency, 1, mHttpTransport)
+            .download(mMods, mod -> mDownloadFolder.resolve(mod.getFileName()));
+    }
+
+    /**
+     * The download loop used before {@link ModDownloader}, kept as a baseline. It is always sequential.
+     */
+    @Benchmark
+    public void legacyStreamCopy() throws IOException {
+        for (final Mod mod : mMods) {
+            try (
+                final InputStream inputStream = new URL(mod.getDownloadUrl()).openStream();
+                final FileOutputStream outputStream =
+                    new FileOutputStream(mDownloadFolder.resolve(mod.getFileName()).toFile())) {
+
+                final byte[] buffer = new byte[4096];
+                for (int length; (length = inputStream.read(buffer)) != -1; ) {
+                    outputStream.write(buffer, 0, length);
+                }
+            }
+        }
+    }
+}
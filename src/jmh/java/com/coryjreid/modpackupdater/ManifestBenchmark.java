@@ -0,0 +1,124 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.coryjreid.modpackupdater.json.InstalledManifest;
+import com.coryjreid.modpackupdater.json.Mod;
+import com.coryjreid.modpackupdater.json.ModpackManifest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading the modpack and installed manifests and diffing them, at several modpack sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManifestBenchmark {
+    @Param({"100", "1000", "10000"})
+    private int mModCount;
+
+    private Path mDirectory;
+    private Path mModpackManifestFile;
+    private Path mInstalledManifestFile;
+    private Path mBinaryInstalledManifestFile;
+    private List<Mod> mInstalledMods;
+    private List<Mod> mModpackMods;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("manifest-benchmark");
+        mModpackManifestFile = mDirectory.resolve("manifest.json");
+        mInstalledManifestFile = mDirectory.resolve("installed_manifest.json");
+
+        mInstalledMods = BenchmarkData.generateMods(mModCount, "https://localhost/");
+        mModpackMods = BenchmarkData.generateUpdatedMods(mInstalledMods);
+        BenchmarkData.writeModpackManifest(mModpackManifestFile, mModpackMods);
+        BenchmarkData.writeInstalledManifest(mInstalledManifestFile, mInstalledMods);
+        mBinaryInstalledManifestFile = mDirectory.resolve("installed_manifest.bin");
+        BinaryInstalledManifest.write(
+            mBinaryInstalledManifestFile,
+            InstalledManifest.deserializeFromFile(mInstalledManifestFile.toFile()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileOperations.deleteRecursively(mDirectory);
+    }
+
+    @Benchmark
+    public ModpackManifest readModpackManifest() throws IOException {
+        return ModpackManifest.deserializeFromFile(mModpackManifestFile.toFile());
+    }
+
+    @Benchmark
+    public InstalledManifest readInstalledManifest() throws IOException {
+        return InstalledManifest.deserializeFromFile(mInstalledManifestFile.toFile());
+    }
+
+    /**
+     * Reads the JSON installed manifest and diffs it against the modpack, as an update does with the JSON format.
+     */
+    @Benchmark
+    public ManifestDiff readAndDiffInstalledManifest() throws IOException {
+        return ManifestDiff.compute(
+            InstalledManifest.deserializeFromFile(mInstalledManifestFile.toFile()).getMods().values(),
+            mModpackMods);
+    }
+
+    /**
+     * Maps the binary installed manifest and diffs it against the modpack, as an update does with the binary format.
+     */
+    @Benchmark
+    public ManifestDiff readAndDiffBinaryInstalledManifest() throws IOException {
+        return ManifestDiff.compute(BinaryInstalledManifest.open(mBinaryInstalledManifestFile), mModpackMods);
+    }
+
+    @Benchmark
+    public ManifestDiff diff() {
+        return ManifestDiff.compute(mInstalledMods, mModpackMods);
+    }
+
+    /**
+     * The diff the mod update used before {@link ManifestDiff}, kept as a baseline.
+     */
+    @Benchmark
+    public List<Mod> legacyDiff() {
+        final Map<Integer, Mod> currentlyInstalled =
+            InstalledManifest.builder().setMods(mInstalledMods).build().getMods();
+        final Collection<Mod> modpackMods = mModpackMods;
+
+        final List<Mod> toDownload = new ArrayList<>();
+        final List<Mod> modpackRemovals = new ArrayList<>(currentlyInstalled.values());
+        modpackRemovals.removeAll(modpackMods);
+        for (final Mod mod : modpackMods) {
+            if (!currentlyInstalled.containsKey(mod.getModId())
+                || currentlyInstalled.get(mod.getModId()).getFileId() != mod.getFileId()) {
+                toDownload.add(mod);
+            }
+        }
+        toDownload.addAll(modpackRemovals);
+        return toDownload;
+    }
+}
@@ -0,0 +1,216 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import com.coryjreid.modpackupdater.json.InstalledManifest;
+import com.coryjreid.modpackupdater.json.Mod;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * A compact binary form of the installed manifest, read through a memory mapping so looking up a mod costs a binary
+ * search over the mapped records rather than parsing and boxing the whole manifest.
+ *
+ * <p>The file is a header, then one fixed-width record per mod sorted by mod ID, then a string area. Each record holds
+ * the mod ID, file ID, file length, SHA-1 hash and the offset of the mod's display name, file name and download URL in
+ * the string area.
+ */
+@Immutable
+public class BinaryInstalledManifest {
+    private static final int MAGIC = 0x4D50494D; // "MPIM"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 40;
+    private static final int SHA1_SIZE = 20;
+    private static final int FLAG_HAS_SHA1 = 1;
+
+    private static final int OFFSET_MOD_ID = 0;
+    private static final int OFFSET_FILE_ID = 4;
+    private static final int OFFSET_FILE_LENGTH = 8;
+    private static final int OFFSET_FLAGS = 12;
+    private static final int OFFSET_SHA1 = 16;
+    private static final int OFFSET_STRINGS = 36;
+
+    private final ByteBuffer mBuffer;
+    private final int mSize;
+    private final int mStringAreaOffset;
+
+    private BinaryInstalledManifest(final ByteBuffer buffer, final int size) {
+        mBuffer = buffer;
+        mSize = size;
+        mStringAreaOffset = HEADER_SIZE + size * RECORD_SIZE;
+    }
+
+    public static BinaryInstalledManifest open(final Path file) throws IOException {
+        final ByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.BIG_ENDIAN);
+        }
+
+        if (buffer.capacity() < HEADER_SIZE
+            || buffer.getInt(0) != MAGIC
+            || buffer.getInt(4) != FORMAT_VERSION
+            || buffer.getInt(8) < 0
+            || buffer.capacity() < HEADER_SIZE + (long) buffer.getInt(8) * RECORD_SIZE) {
+            throw new IOException("\"" + file + "\" is not a valid binary installed manifest");
+        }
+        return new BinaryInstalledManifest(buffer, buffer.getInt(8));
+    }
+
+    public static void write(final Path file, final InstalledManifest manifest) throws IOException {
+        final List<Mod> mods = new ArrayList<>(manifest.getMods().values());
+        mods.sort(Comparator.comparingInt(Mod::getModId));
+
+        final ByteBuffer records = ByteBuffer.allocate(HEADER_SIZE + mods.size() * RECORD_SIZE);
+        records.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(mods.size()).putInt(0);
+        final ByteArrayOutputStream stringArea = new ByteArrayOutputStream();
+        final DataOutputStream strings = new DataOutputStream(stringArea);
+        for (final Mod mod : mods) {
+            records.putInt(mod.getModId());
+            records.putInt(mod.getFileId());
+            records.putInt(mod.getFileLength());
+            records.putInt(mod.getSha1() == null ? 0 : FLAG_HAS_SHA1);
+            records.put(mod.getSha1() == null ? new byte[SHA1_SIZE] : fromHex(mod.getSha1()));
+            records.putInt(strings.size());
+            writeString(strings, mod.getDisplayName());
+            writeString(strings, mod.getFileName());
+            writeString(strings, mod.getDownloadUrl());
+        }
+        records.flip();
+
+        try (final FileChannel channel = FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            for (final ByteBuffer buffer : new ByteBuffer[] {records, ByteBuffer.wrap(stringArea.toByteArray())}) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the index of the record for {@code modId}, or {@code -1} if the mod is not installed
+     */
+    public int indexOf(final int modId) {
+        int low = 0;
+        int high = mSize - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int middleModId = getModId(middle);
+            if (middleModId < modId) {
+                low = middle + 1;
+            } else if (middleModId > modId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public int getModId(final int index) {
+        return mBuffer.getInt(recordOffset(index) + OFFSET_MOD_ID);
+    }
+
+    public int getFileId(final int index) {
+        return mBuffer.getInt(recordOffset(index) + OFFSET_FILE_ID);
+    }
+
+    public int getFileLength(final int index) {
+        return mBuffer.getInt(recordOffset(index) + OFFSET_FILE_LENGTH);
+    }
+
+    /**
+     * @return the hex encoded SHA-1 hash of the installed file, or {@code null} if none was recorded
+     */
+    public String getSha1(final int index) {
+        final int offset = recordOffset(index);
+        if ((mBuffer.getInt(offset + OFFSET_FLAGS) & FLAG_HAS_SHA1) == 0) {
+            return null;
+        }
+        final byte[] hash = new byte[SHA1_SIZE];
+        mBuffer.duplicate().position(offset + OFFSET_SHA1).get(hash);
+        return FileOperations.toHex(hash);
+    }
+
+    public String getFileName(final int index) {
+        final ByteBuffer strings = mBuffer.duplicate();
+        strings.position(mStringAreaOffset + mBuffer.getInt(recordOffset(index) + OFFSET_STRINGS));
+        // Skip the display name
+        final int displayNameLength = strings.getInt();
+        strings.position(strings.position() + Math.max(0, displayNameLength));
+        return readString(strings);
+    }
+
+    public Mod getMod(final int index) {
+        final ByteBuffer strings = mBuffer.duplicate();
+        strings.position(mStringAreaOffset + mBuffer.getInt(recordOffset(index) + OFFSET_STRINGS));
+        return Mod.builder()
+            .setModProjectId(getModId(index))
+            .setModFileId(getFileId(index))
+            .setModFileLength(getFileLength(index))
+            .setModFileHash(getSha1(index))
+            .setModDisplayName(readString(strings))
+            .setModFileName(readString(strings))
+            .setModDownloadUrl(readString(strings))
+            .build();
+    }
+
+    private static byte[] fromHex(final String hex) {
+        final byte[] bytes = new byte[SHA1_SIZE];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string, with a length of {@code -1} standing for {@code null}.
+     */
+    private static void writeString(final DataOutputStream outputStream, final String value) throws IOException {
+        if (value == null) {
+            outputStream.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    private int recordOffset(final int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Record " + index + " is out of range for " + mSize + " mods");
+        }
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+}
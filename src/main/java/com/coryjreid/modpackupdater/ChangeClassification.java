@@ -0,0 +1,124 @@
+package com.coryjreid.modpackupdater;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * Decides whether an update can be applied to a running server or needs a restart. Only changes the server can pick up
+ * through RCON reload commands are applied live: server configs, KubeJS server scripts and KubeJS data. Anything else,
+ * including any change to the installed mods, requires a restart.
+ */
+@Immutable
+public class ChangeClassification {
+    /**
+     * The key of the plan that syncs {@code defaultconfigs} into the world's {@code serverconfig} folder.
+     */
+    public static final String SERVER_CONFIG_FOLDER = "serverconfig";
+
+    private static final String RELOAD_COMMAND = "reload";
+    private static final String KUBEJS_RELOAD_COMMAND = "kubejs reload server_scripts";
+    private static final String DEFAULT_CONFIGS_FOLDER = "defaultconfigs";
+    private static final String KUBEJS_FOLDER = "kubejs";
+
+    private final List<String> mRestartReasons;
+    private final Set<String> mReloadCommands;
+
+    private ChangeClassification(final List<String> restartReasons, final Set<String> reloadCommands) {
+        mRestartReasons = Collections.unmodifiableList(restartReasons);
+        mReloadCommands = Collections.unmodifiableSet(reloadCommands);
+    }
+
+    /**
+     * @param folderPlans the sync plan of each managed folder, keyed by folder name, plus the server config plan under
+     *     {@link #SERVER_CONFIG_FOLDER}
+     */
+    public static ChangeClassification classify(
+        final ManifestDiff modDiff,
+        final boolean motdChanged,
+        final Map<String, SyncPlan> folderPlans) {
+
+        final List<String> restartReasons = new ArrayList<>();
+        final Set<String> reloadCommands = new LinkedHashSet<>();
+        if (!modDiff.isEmpty()) {
+            restartReasons.add("the installed mods change");
+        }
+        if (motdChanged) {
+            restartReasons.add("the motd changes");
+        }
+
+        for (final Map.Entry<String, SyncPlan> entry : folderPlans.entrySet()) {
+            final String folder = entry.getKey();
+            final SyncPlan plan = entry.getValue();
+            if (plan.isEmpty()) {
+                continue;
+            }
+            switch (folder) {
+                case SERVER_CONFIG_FOLDER:
+                    reloadCommands.add(RELOAD_COMMAND);
+                    break;
+                case DEFAULT_CONFIGS_FOLDER:
+                    // Only read when a world is created
+                    break;
+                case KUBEJS_FOLDER:
+                    classifyKubeJsChanges(plan, restartReasons, reloadCommands);
+                    break;
+                default:
+                    restartReasons.add("\"" + folder + "\" changes");
+                    break;
+            }
+        }
+        return new ChangeClassification(restartReasons, reloadCommands);
+    }
+
+    /**
+     * @return why a restart is needed, empty when the update can be applied live
+     */
+    public List<String> getRestartReasons() {
+        return mRestartReasons;
+    }
+
+    /**
+     * @return the RCON commands that make the running server pick up a live update, in the order to run them
+     */
+    public Set<String> getReloadCommands() {
+        return mReloadCommands;
+    }
+
+    public boolean isRestartRequired() {
+        return !mRestartReasons.isEmpty();
+    }
+
+    private static void classifyKubeJsChanges(
+        final SyncPlan plan,
+        final List<String> restartReasons,
+        final Set<String> reloadCommands) {
+
+        final List<Path> changedPaths = new ArrayList<>(plan.getCopies());
+        changedPaths.addAll(plan.getDeletions());
+        for (final Path path : changedPaths) {
+            switch (path.getName(0).toString()) {
+                case "server_scripts":
+                    reloadCommands.add(KUBEJS_RELOAD_COMMAND);
+                    break;
+                case "data":
+                    reloadCommands.add(RELOAD_COMMAND);
+                    break;
+                case "assets":
+                case "client_scripts":
+                    // Only used by clients
+                    break;
+                default:
+                    // Startup scripts and KubeJS' own config are only read while the server starts
+                    restartReasons.add("\"" + KUBEJS_FOLDER + "/" + path + "\" changes");
+                    return;
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * What the last successful update deployed: the source repository commit and a fingerprint of the content and settings
+ * that went into it. A run whose commit and fingerprint both match has nothing to do. The settings it was deployed with
+ * are kept alongside, with a fingerprint of each source folder, so a later run can tell which folders are still in
+ * place on the server.
+ */
+@Immutable
+public class DeploymentState {
+    private static final String KEY_COMMIT = "commit";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_SETTINGS = "settings";
+    private static final String KEY_FOLDER_PREFIX = "folder.";
+
+    private final String mCommit;
+    private final String mFingerprint;
+    private final String mSettings;
+    private final Map<String, String> mFolderFingerprints;
+
+    public DeploymentState(final String commit, final String fingerprint, final String settings) {
+        this(commit, fingerprint, settings, Map.of());
+    }
+
+    public DeploymentState(
+        final String commit,
+        final String fingerprint,
+        final String settings,
+        final Map<String, String> folderFingerprints) {
+
+        mCommit = commit;
+        mFingerprint = fingerprint;
+        mSettings = settings;
+        mFolderFingerprints = Map.copyOf(folderFingerprints);
+    }
+
+    /**
+     * @return the recorded state, or {@code null} if nothing has been recorded yet
+     */
+    public static DeploymentState read(final Path file) throws IOException {
+        if (Files.notExists(file)) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        try (final InputStream inputStream = Files.newInputStream(file)) {
+            properties.load(inputStream);
+        }
+        final Map<String, String> folderFingerprints = new TreeMap<>();
+        for (final String key : properties.stringPropertyNames()) {
+            if (key.startsWith(KEY_FOLDER_PREFIX)) {
+                folderFingerprints.put(key.substring(KEY_FOLDER_PREFIX.length()), properties.getProperty(key));
+            }
+        }
+        return new DeploymentState(
+            properties.getProperty(KEY_COMMIT),
+            properties.getProperty(KEY_FINGERPRINT),
+            properties.getProperty(KEY_SETTINGS),
+            folderFingerprints);
+    }
+
+    public static void write(final Path file, final DeploymentState state) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty(KEY_COMMIT, state.getCommit());
+        properties.setProperty(KEY_FINGERPRINT, state.getFingerprint());
+        if (state.getSettings() != null) {
+            properties.setProperty(KEY_SETTINGS, state.getSettings());
+        }
+        state.mFolderFingerprints.forEach((folder, fingerprint) ->
+            properties.setProperty(KEY_FOLDER_PREFIX + folder, fingerprint));
+
+        // Replace the file in one step so an interrupted write cannot leave a state that matches by accident
+        final Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final OutputStream outputStream = Files.newOutputStream(temporaryFile)) {
+            properties.store(outputStream, "Last deployed modpack");
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public String getCommit() {
+        return mCommit;
+    }
+
+    public String getFingerprint() {
+        return mFingerprint;
+    }
+
+    /**
+     * @return a hash of the settings the content was deployed with, or {@code null} if they were not recorded
+     */
+    public String getSettings() {
+        return mSettings;
+    }
+
+    /**
+     * @return the fingerprint of the source folder when it was deployed, or {@code null} if it was not recorded
+     */
+    public String getFolderFingerprint(final String folder) {
+        return mFolderFingerprints.get(folder);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        // The settings are already part of the fingerprint
+        final DeploymentState that = (DeploymentState) o;
+        return Objects.equals(mCommit, that.mCommit) && Objects.equals(mFingerprint, that.mFingerprint);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mCommit, mFingerprint);
+    }
+}
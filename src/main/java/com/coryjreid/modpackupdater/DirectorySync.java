@@ -0,0 +1,301 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes a target directory tree match a source tree by copying only new or changed files and deleting only entries that
+ * no longer exist in the source. Files are considered unchanged when their size and modification time match, or, when
+ * hash comparison is enabled, when their contents hash the same.
+ *
+ * <p>Changed files are copied in parallel on a fork-join pool, split by directory. They can also be hard linked or
+ * reflinked instead of copied when the source and target are on the same filesystem.
+ */
+public class DirectorySync {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * How changed files are transferred to the target.
+     */
+    public enum CopyMode {
+        /**
+         * A full copy of the file contents.
+         */
+        COPY,
+
+        /**
+         * A hard link to the source file. The target then shares the source's contents, so changes the server makes
+         * to a linked file also appear in the source repository.
+         */
+        HARDLINK,
+
+        /**
+         * A copy-on-write clone, which shares blocks with the source until either file is modified.
+         */
+        REFLINK
+    }
+
+    private final boolean mCompareHashes;
+    private final CopyMode mCopyMode;
+    private final int mParallelism;
+
+    public DirectorySync(final boolean compareHashes) {
+        this(compareHashes, CopyMode.COPY, Runtime.getRuntime().availableProcessors());
+    }
+
+    public DirectorySync(final boolean compareHashes, final CopyMode copyMode, final int parallelism) {
+        mCompareHashes = compareHashes;
+        mCopyMode = copyMode;
+        mParallelism = Math.max(1, parallelism);
+    }
+
+    public SyncPlan plan(final Path source, final Path target) throws IOException {
+        final Map<Path, BasicFileAttributes> sourceEntries = new HashMap<>();
+        if (Files.isDirectory(source)) {
+            Files.walkFileTree(source, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                    sourceEntries.put(source.relativize(dir), attrs);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    sourceEntries.put(source.relativize(file), attrs);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } else {
+            sLogger.warn("\"" + source + "\" does not exist; \"" + target + "\" will be emptied");
+        }
+
+        // Anything in the target that is missing from the source, or has changed type, is deleted
+        final List<Path> deletions = new ArrayList<>();
+        final Map<Path, BasicFileAttributes> targetFiles = new HashMap<>();
+        if (Files.isDirectory(target)) {
+            Files.walkFileTree(target, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                    final Path relative = target.relativize(dir);
+                    if (dir.equals(target)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    final BasicFileAttributes sourceAttributes = sourceEntries.get(relative);
+                    if (sourceAttributes == null || !sourceAttributes.isDirectory()) {
+                        deletions.add(relative);
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    final Path relative = target.relativize(file);
+                    final BasicFileAttributes sourceAttributes = sourceEntries.get(relative);
+                    if (sourceAttributes == null || sourceAttributes.isDirectory()) {
+                        deletions.add(relative);
+                    } else {
+                        targetFiles.put(relative, attrs);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        final List<Path> copies = new ArrayList<>();
+        final List<Path> timestampUpdates = new ArrayList<>();
+        long copyBytes = 0;
+        int unchangedCount = 0;
+        for (final Map.Entry<Path, BasicFileAttributes> entry : sourceEntries.entrySet()) {
+            if (entry.getValue().isDirectory()) {
+                continue;
+            }
+            final Path relative = entry.getKey();
+            final Path sourceFile = source.resolve(relative);
+            final Path targetFile = target.resolve(relative);
+            final BasicFileAttributes targetAttributes = targetFiles.get(relative);
+            if (!isUnchanged(sourceFile, entry.getValue(), targetFile, targetAttributes)) {
+                copies.add(relative);
+                copyBytes += entry.getValue().size();
+                continue;
+            }
+            if (!entry.getValue().lastModifiedTime().equals(targetAttributes.lastModifiedTime())) {
+                timestampUpdates.add(relative);
+            }
+            unchangedCount++;
+        }
+
+        return new SyncPlan(source, target, copies, deletions, timestampUpdates, copyBytes, unchangedCount);
+    }
+
+    public void apply(final SyncPlan plan) throws IOException {
+        final Path source = plan.getSource();
+        final Path target = plan.getTarget();
+
+        int deleteFailures = 0;
+        for (final Path relative : plan.getDeletions()) {
+            deleteFailures += FileOperations.deleteTree(target.resolve(relative));
+        }
+        if (deleteFailures > 0) {
+            sLogger.warn(String.format("Failed to delete %s entries from \"%s\"", deleteFailures, target));
+        }
+
+        Files.createDirectories(target);
+        copyFiles(plan);
+
+        // Same contents with a different timestamp; align them so the next sync can skip hashing
+        for (final Path relative : plan.getTimestampUpdates()) {
+            Files.setLastModifiedTime(target.resolve(relative), Files.getLastModifiedTime(source.resolve(relative)));
+        }
+
+        sLogger.info(String.format(
+            "Synced \"%s\" to \"%s\": %s copied, %s deleted, %s unchanged",
+            source,
+            target,
+            plan.getCopies().size(),
+            plan.getDeletions().size(),
+            plan.getUnchangedCount()));
+    }
+
+    public void sync(final Path source, final Path target) throws IOException {
+        apply(plan(source, target));
+    }
+
+    private void copyFiles(final SyncPlan plan) throws IOException {
+        if (plan.getCopies().isEmpty()) {
+            return;
+        }
+
+        CopyMode copyMode = mCopyMode;
+        if (copyMode != CopyMode.COPY && !FileOperations.isSameFileStore(plan.getSource(), plan.getTarget())) {
+            sLogger.info(String.format(
+                "\"%s\" and \"%s\" are on different filesystems; Copying instead of using %s",
+                plan.getSource(),
+                plan.getTarget(),
+                copyMode));
+            copyMode = CopyMode.COPY;
+        }
+
+        // Each task copies the changed files of one directory
+        final Map<Path, List<Path>> copiesByDirectory = new HashMap<>();
+        for (final Path relative : plan.getCopies()) {
+            final Path directory = relative.getParent();
+            copiesByDirectory.computeIfAbsent(directory == null ? Paths.get("") : directory, key -> new ArrayList<>())
+                .add(relative);
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(Math.min(mParallelism, copiesByDirectory.size()));
+        try {
+            pool.invoke(new CopyDirectoriesTask(
+                plan,
+                copyMode,
+                new AtomicBoolean(copyMode != CopyMode.COPY),
+                new ArrayList<>(copiesByDirectory.values())));
+        } catch (final UncheckedIOException exception) {
+            throw exception.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private boolean isUnchanged(
+        final Path sourceFile,
+        final BasicFileAttributes sourceAttributes,
+        final Path targetFile,
+        final BasicFileAttributes targetAttributes) throws IOException {
+
+        if (targetAttributes == null || sourceAttributes.size() != targetAttributes.size()) {
+            return false;
+        }
+        if (sourceAttributes.lastModifiedTime().equals(targetAttributes.lastModifiedTime())) {
+            return true;
+        }
+        return mCompareHashes && FileOperations.sha1(sourceFile).equals(FileOperations.sha1(targetFile));
+    }
+
+    /**
+     * Copies groups of files that share a directory, splitting the groups in half until each task has one.
+     */
+    private static final class CopyDirectoriesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SyncPlan mPlan;
+        private final CopyMode mCopyMode;
+        private final AtomicBoolean mUseCopyMode;
+        private final List<List<Path>> mDirectories;
+
+        CopyDirectoriesTask(
+            final SyncPlan plan,
+            final CopyMode copyMode,
+            final AtomicBoolean useCopyMode,
+            final List<List<Path>> directories) {
+
+            mPlan = plan;
+            mCopyMode = copyMode;
+            mUseCopyMode = useCopyMode;
+            mDirectories = directories;
+        }
+
+        @Override
+        protected void compute() {
+            if (mDirectories.size() > 1) {
+                final int middle = mDirectories.size() / 2;
+                final List<List<Path>> first = mDirectories.subList(0, middle);
+                final List<List<Path>> second = mDirectories.subList(middle, mDirectories.size());
+                invokeAll(
+                    new CopyDirectoriesTask(mPlan, mCopyMode, mUseCopyMode, first),
+                    new CopyDirectoriesTask(mPlan, mCopyMode, mUseCopyMode, second));
+                return;
+            }
+
+            try {
+                for (final Path relative : mDirectories.get(0)) {
+                    copyFile(mPlan.getSource().resolve(relative), mPlan.getTarget().resolve(relative));
+                }
+            } catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        private void copyFile(final Path source, final Path target) throws IOException {
+            Files.createDirectories(target.getParent());
+            if (mUseCopyMode.get()) {
+                try {
+                    if (mCopyMode == CopyMode.HARDLINK) {
+                        Files.deleteIfExists(target);
+                        Files.createLink(target, source);
+                    } else {
+                        FileOperations.reflink(source, target);
+                    }
+                    return;
+                } catch (final IOException | UnsupportedOperationException exception) {
+                    // The rest of the sync copies rather than failing the same way for every file
+                    if (mUseCopyMode.getAndSet(false)) {
+                        sLogger.warn(
+                            "Could not " + mCopyMode + " \"" + source + "\"; Copying the remaining files instead",
+                            exception);
+                    }
+                }
+            }
+            // Keeping the source modification time lets the next sync recognise the file as unchanged
+            FileOperations.copy(source, target);
+        }
+    }
+}
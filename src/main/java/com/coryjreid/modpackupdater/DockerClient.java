@@ -0,0 +1,499 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.coryjreid.modpackupdater.json.Json;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Controls containers through the Docker Engine API on the daemon's Unix socket, keeping one connection open for the
+ * whole run. Unix sockets need Java 16 or newer; on older runtimes, or when the socket cannot be used, every action
+ * falls back to running the {@code docker} CLI.
+ *
+ * <p>A failed call is only repeated, over the API or the CLI, when it cannot have changed anything: either it only
+ * reads, or none of its requests that act on a container were sent. Nothing is ever started, stopped or run twice.
+ */
+public class DockerClient {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * Each frame of an exec's output starts with the stream type, three zero bytes and the payload length.
+     */
+    private static final int STREAM_FRAME_HEADER_SIZE = 8;
+
+    private final Path mSocketPath;
+    private final Connector mConnector;
+    private boolean mUseCli;
+    private boolean mActionSent;
+    private SocketChannel mChannel;
+    private InputStream mInputStream;
+    private OutputStream mOutputStream;
+
+    /**
+     * @param socketPath the Docker daemon's Unix socket, or {@code null} to always use the CLI
+     */
+    public DockerClient(final Path socketPath) {
+        this(socketPath, () -> UnixSockets.open(socketPath));
+        mUseCli = socketPath == null || !Files.exists(socketPath) || UnixSockets.OPEN == null;
+        if (socketPath != null && mUseCli) {
+            sLogger.info(UnixSockets.OPEN == null
+                ? "Unix sockets need Java 16 or newer; Using the docker CLI"
+                : "\"" + socketPath + "\" does not exist; Using the docker CLI");
+        }
+    }
+
+    /**
+     * Talks to a daemon through connections from {@code connector}, without falling back to the CLI up front.
+     */
+    DockerClient(final Path socketPath, final Connector connector) {
+        mSocketPath = socketPath;
+        mConnector = connector;
+    }
+
+    public synchronized DockerResult start(final String container) {
+        return execute(
+            () -> toResult(request("POST", "/containers/" + encode(container) + "/start", null)),
+            "start",
+            container);
+    }
+
+    public synchronized DockerResult stop(final String container) {
+        return execute(
+            () -> toResult(request("POST", "/containers/" + encode(container) + "/stop", null)),
+            "stop",
+            container);
+    }
+
+    /**
+     * Runs a command in a running container and waits for it to finish.
+     */
+    public synchronized DockerResult exec(final String container, final String... command) {
+        final List<String> cliArguments = new ArrayList<>(List.of("exec", container));
+        cliArguments.addAll(Arrays.asList(command));
+        return execute(() -> execThroughApi(container, command), cliArguments.toArray(new String[0]));
+    }
+
+    /**
+     * @return the container's details as reported by {@code docker inspect}, or {@code null} if they could not be read
+     */
+    public synchronized JsonNode inspect(final String container) {
+        final DockerResult result = execute(() -> {
+            final Response response = request("GET", "/containers/" + encode(container) + "/json", null);
+            return new DockerResult(response.isSuccess(), response.getBodyString());
+        }, "inspect", container);
+        if (!result.isSuccess()) {
+            return null;
+        }
+        try {
+            final JsonNode details = Json.MAPPER.readTree(result.getOutput());
+            // The CLI prints an array with one entry per container
+            return details.isArray() ? details.path(0) : details;
+        } catch (final IOException exception) {
+            sLogger.warn("Could not parse the details of container \"" + container + "\"", exception);
+            return null;
+        }
+    }
+
+    /**
+     * @return the container's stdout and stderr since {@code since}, to the second
+     */
+    public synchronized DockerResult logs(final String container, final Instant since) {
+        final String sinceSeconds = String.valueOf(since.getEpochSecond());
+        return execute(() -> {
+            final Response response = request(
+                "GET",
+                "/containers/" + encode(container) + "/logs?stdout=true&stderr=true&since=" + sinceSeconds,
+                null);
+            return response.isSuccess() ? new DockerResult(true, demultiplex(response.getBody())) : toResult(response);
+        }, "logs", "--since", sinceSeconds, container);
+    }
+
+    /**
+     * Closes the connection to the Docker daemon.
+     */
+    public synchronized void close() {
+        disconnect();
+    }
+
+    private DockerResult execute(final ApiCall apiCall, final String... cliArguments) {
+        if (!mUseCli) {
+            mActionSent = false;
+            try {
+                return apiCall.call();
+            } catch (final IOException exception) {
+                disconnect();
+                if (mActionSent) {
+                    return createUnknownOutcome(exception);
+                }
+                // Nothing was changed yet, so the call can be made again on a new connection
+                try {
+                    return apiCall.call();
+                } catch (final IOException retryException) {
+                    disconnect();
+                    if (mActionSent) {
+                        return createUnknownOutcome(retryException);
+                    }
+                    sLogger.warn(
+                        "The Docker Engine API on \"" + mSocketPath + "\" failed; Using the docker CLI instead",
+                        retryException);
+                    mUseCli = true;
+                }
+            }
+        }
+        return executeCli(cliArguments);
+    }
+
+    /**
+     * Reports a call whose request acting on the container was sent but never answered. The daemon may have carried it
+     * out, so it is not repeated.
+     */
+    private DockerResult createUnknownOutcome(final IOException exception) {
+        sLogger.warn("The Docker daemon did not answer a request it may have acted on", exception);
+        return new DockerResult(false, "The Docker daemon did not answer: " + exception);
+    }
+
+    private DockerResult execThroughApi(final String container, final String... command) throws IOException {
+        final Map<String, Object> execConfig = new HashMap<>();
+        execConfig.put("AttachStdout", true);
+        execConfig.put("AttachStderr", true);
+        execConfig.put("Cmd", command);
+        final Response created = request("POST", "/containers/" + encode(container) + "/exec", execConfig);
+        if (!created.isSuccess()) {
+            return toResult(created);
+        }
+        final String execId = Json.MAPPER.readTree(created.getBody()).path("Id").asText();
+
+        final Response started = request("POST", "/exec/" + execId + "/start", Map.of("Detach", false, "Tty", false));
+        if (!started.isSuccess()) {
+            return toResult(started);
+        }
+        final String output = demultiplex(started.getBody());
+
+        final Response inspected = request("GET", "/exec/" + execId + "/json", null);
+        if (!inspected.isSuccess()) {
+            return toResult(inspected);
+        }
+        return new DockerResult(Json.MAPPER.readTree(inspected.getBody()).path("ExitCode").asInt(-1) == 0, output);
+    }
+
+    private static DockerResult executeCli(final String... args) {
+        final List<String> commandWithArgs = new ArrayList<>();
+        commandWithArgs.add("docker");
+        commandWithArgs.addAll(Arrays.asList(args));
+        try {
+            final Process process = new ProcessBuilder(commandWithArgs).redirectErrorStream(true).start();
+            final String output;
+            try (final InputStream inputStream = process.getInputStream()) {
+                output = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            return new DockerResult(process.waitFor() == 0, output.trim());
+        } catch (final IOException exception) {
+            return new DockerResult(false, exception.toString());
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return new DockerResult(false, exception.toString());
+        }
+    }
+
+    private Response request(final String method, final String path, final Object body) throws IOException {
+        if (mChannel != null && (!mChannel.isOpen() || isClosedByDaemon())) {
+            disconnect();
+        }
+        if (mChannel == null) {
+            mChannel = mConnector.connect();
+            mInputStream = new BufferedInputStream(Channels.newInputStream(mChannel));
+            mOutputStream = Channels.newOutputStream(mChannel);
+        }
+
+        final byte[] bodyBytes = body == null ? new byte[0] : Json.MAPPER.writeValueAsBytes(body);
+        final StringBuilder head = new StringBuilder()
+            .append(method).append(' ').append(path).append(" HTTP/1.1\r\n")
+            .append("Host: docker\r\n")
+            .append("Content-Length: ").append(bodyBytes.length).append("\r\n");
+        if (body != null) {
+            head.append("Content-Type: application/json\r\n");
+        }
+        head.append("\r\n");
+        mOutputStream.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+        mOutputStream.write(bodyBytes);
+        mOutputStream.flush();
+        if (!method.equals("GET")) {
+            mActionSent = true;
+        }
+
+        final Response response = readResponse();
+        if (!response.isKeepAlive()) {
+            disconnect();
+        }
+        return response;
+    }
+
+    /**
+     * Checks a kept-alive connection before reusing it, since a request written to a connection the daemon has already
+     * closed fails only once it was sent and so could not be retried.
+     */
+    private boolean isClosedByDaemon() {
+        try {
+            mChannel.configureBlocking(false);
+            try {
+                // Between responses there is nothing to read unless the daemon closed its end
+                return mChannel.read(ByteBuffer.allocate(1)) != 0;
+            } finally {
+                mChannel.configureBlocking(true);
+            }
+        } catch (final IOException exception) {
+            return true;
+        }
+    }
+
+    private Response readResponse() throws IOException {
+        final String statusLine = readLine();
+        final String[] statusParts = statusLine.split(" ", 3);
+        if (statusParts.length < 2 || !statusParts[0].startsWith("HTTP/")) {
+            throw new IOException("Unexpected response from the Docker daemon: " + statusLine);
+        }
+        final int status = Integer.parseInt(statusParts[1]);
+
+        final Map<String, String> headers = new HashMap<>();
+        for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+            final int separator = line.indexOf(':');
+            if (separator > 0) {
+                headers.put(
+                    line.substring(0, separator).trim().toLowerCase(Locale.ROOT),
+                    line.substring(separator + 1).trim());
+            }
+        }
+
+        final byte[] body;
+        boolean keepAlive = !"close".equalsIgnoreCase(headers.get("connection"));
+        if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            body = readChunkedBody();
+        } else if (headers.containsKey("content-length")) {
+            body = readFully(Integer.parseInt(headers.get("content-length")));
+        } else if (status == 204 || status == 304) {
+            body = new byte[0];
+        } else {
+            // A hijacked stream, such as an exec's output, ends when the daemon closes the connection
+            body = mInputStream.readAllBytes();
+            keepAlive = false;
+        }
+        return new Response(status, body, keepAlive);
+    }
+
+    private byte[] readChunkedBody() throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            final String sizeLine = readLine();
+            final int extension = sizeLine.indexOf(';');
+            final int size = Integer.parseInt((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+            if (size == 0) {
+                // Skip any trailers
+                while (!readLine().isEmpty()) {
+                    continue;
+                }
+                return body.toByteArray();
+            }
+            body.write(readFully(size));
+            readLine();
+        }
+    }
+
+    private byte[] readFully(final int length) throws IOException {
+        final byte[] bytes = mInputStream.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException("The Docker daemon closed the connection mid-response");
+        }
+        return bytes;
+    }
+
+    private String readLine() throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int next;
+        while ((next = mInputStream.read()) != '\n') {
+            if (next == -1) {
+                throw new EOFException("The Docker daemon closed the connection");
+            }
+            if (next != '\r') {
+                line.write(next);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    private void disconnect() {
+        if (mChannel != null) {
+            try {
+                mChannel.close();
+            } catch (final IOException exception) {
+                sLogger.debug("Failed to close the Docker connection", exception);
+            }
+        }
+        mChannel = null;
+        mInputStream = null;
+        mOutputStream = null;
+    }
+
+    /**
+     * Joins the stdout and stderr frames of a multiplexed exec stream. A stream that is not framed is returned as is.
+     */
+    static String demultiplex(final byte[] stream) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int offset = 0;
+        while (offset + STREAM_FRAME_HEADER_SIZE <= stream.length) {
+            final int streamType = stream[offset];
+            if (streamType < 0 || streamType > 2 || stream[offset + 1] != 0) {
+                return new String(stream, StandardCharsets.UTF_8).trim();
+            }
+            final int length = ((stream[offset + 4] & 0xFF) << 24)
+                | ((stream[offset + 5] & 0xFF) << 16)
+                | ((stream[offset + 6] & 0xFF) << 8)
+                | (stream[offset + 7] & 0xFF);
+            final int start = offset + STREAM_FRAME_HEADER_SIZE;
+            output.write(stream, start, Math.min(length, stream.length - start));
+            offset = start + length;
+        }
+        if (offset == 0) {
+            // Too short to hold a frame header
+            return new String(stream, StandardCharsets.UTF_8).trim();
+        }
+        return output.toString(StandardCharsets.UTF_8).trim();
+    }
+
+    private static DockerResult toResult(final Response response) {
+        if (response.isSuccess()) {
+            return new DockerResult(true, response.getBodyString());
+        }
+        String message = response.getBodyString();
+        try {
+            message = Json.MAPPER.readTree(response.getBody()).path("message").asText(message);
+        } catch (final IOException exception) {
+            // Not JSON; keep the raw body
+        }
+        return new DockerResult(false, "HTTP " + response.getStatus() + ": " + message);
+    }
+
+    private static String encode(final String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface ApiCall {
+        DockerResult call() throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Connector {
+        SocketChannel connect() throws IOException;
+    }
+
+    private static final class Response {
+        private final int mStatus;
+        private final byte[] mBody;
+        private final boolean mKeepAlive;
+
+        Response(final int status, final byte[] body, final boolean keepAlive) {
+            mStatus = status;
+            mBody = body;
+            mKeepAlive = keepAlive;
+        }
+
+        int getStatus() {
+            return mStatus;
+        }
+
+        byte[] getBody() {
+            return mBody;
+        }
+
+        String getBodyString() {
+            return new String(mBody, StandardCharsets.UTF_8).trim();
+        }
+
+        boolean isKeepAlive() {
+            return mKeepAlive;
+        }
+
+        /**
+         * Docker answers 304 to starting a running container or stopping a stopped one, which leaves it as requested.
+         */
+        boolean isSuccess() {
+            return mStatus / 100 == 2 || mStatus == 304;
+        }
+    }
+
+    /**
+     * Opens Unix domain socket channels through reflection, since they are only available from Java 16.
+     */
+    private static final class UnixSockets {
+        static final Method OPEN;
+        static final Method ADDRESS_OF;
+        static final ProtocolFamily UNIX;
+
+        static {
+            Method open = null;
+            Method addressOf = null;
+            ProtocolFamily unix = null;
+            try {
+                unix = StandardProtocolFamily.valueOf("UNIX");
+                open = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+                addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+            } catch (final IllegalArgumentException | ReflectiveOperationException exception) {
+                open = null;
+            }
+            OPEN = open;
+            ADDRESS_OF = addressOf;
+            UNIX = unix;
+        }
+
+        private UnixSockets() {
+        }
+
+        static SocketChannel open(final Path socketPath) throws IOException {
+            try {
+                final SocketChannel channel = (SocketChannel) OPEN.invoke(null, UNIX);
+                try {
+                    channel.connect((SocketAddress) ADDRESS_OF.invoke(null, socketPath));
+                } catch (final IOException | ReflectiveOperationException exception) {
+                    channel.close();
+                    throw exception;
+                }
+                return channel;
+            } catch (final InvocationTargetException exception) {
+                if (exception.getCause() instanceof IOException) {
+                    throw (IOException) exception.getCause();
+                }
+                throw new IOException("Could not connect to \"" + socketPath + "\"", exception.getCause());
+            } catch (final IllegalAccessException exception) {
+                throw new IOException("Could not connect to \"" + socketPath + "\"", exception);
+            }
+        }
+    }
+}
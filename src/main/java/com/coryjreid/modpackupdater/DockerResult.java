@@ -0,0 +1,28 @@
+package com.coryjreid.modpackupdater;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * The outcome of a Docker action, whether it went through the Engine API or the {@code docker} CLI.
+ */
+@Immutable
+public class DockerResult {
+    private final boolean mSuccess;
+    private final String mOutput;
+
+    public DockerResult(final boolean success, final String output) {
+        mSuccess = success;
+        mOutput = output;
+    }
+
+    /**
+     * @return the output of an exec, or the error Docker reported for a failed action
+     */
+    public String getOutput() {
+        return mOutput;
+    }
+
+    public boolean isSuccess() {
+        return mSuccess;
+    }
+}
@@ -0,0 +1,286 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public final class FileOperations {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final String HASH_ALGORITHM = "SHA-1";
+    private static final int DELETE_BATCH_SIZE = 64;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private FileOperations() {}
+
+    /**
+     * Copies the contents of {@code source} to {@code target}, replacing it if it exists, and carries over the source
+     * modification time. The bytes are moved with {@link FileChannel#transferTo(long, long,
+     * java.nio.channels.WritableByteChannel)} so the kernel can copy them without passing through user space.
+     */
+    public static void copy(final Path source, final Path target) throws IOException {
+        try (
+            final FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+            final FileChannel targetChannel = FileChannel.open(
+                target,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            final long size = sourceChannel.size();
+            for (long position = 0; position < size; ) {
+                final long transferred = sourceChannel.transferTo(position, size - position, targetChannel);
+                if (transferred <= 0) {
+                    throw new IOException("\"" + source + "\" changed size while it was being copied");
+                }
+                position += transferred;
+            }
+        }
+        Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+    }
+
+    /**
+     * Deletes {@code path} and, if it is a directory, everything beneath it. Does nothing if the path does not exist.
+     *
+     * @throws IOException if any entry could not be deleted
+     */
+    public static void deleteRecursively(final Path path) throws IOException {
+        final int failures = deleteTree(path);
+        if (failures > 0) {
+            throw new IOException("Failed to delete " + failures + " entries of \"" + path + "\"");
+        }
+    }
+
+    /**
+     * Deletes {@code path} and, if it is a directory, everything beneath it. The tree is walked depth first without
+     * collecting it up front, and the entries of each directory are deleted in parallel before the directory itself.
+     * Entries that cannot be deleted are logged and skipped, along with the directories that still contain them.
+     *
+     * @return the number of entries that could not be deleted
+     */
+    public static int deleteTree(final Path path) {
+        if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            return delete(path);
+        }
+        return ForkJoinPool.commonPool().invoke(new DeleteDirectoryTask(path));
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (final NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(HASH_ALGORITHM + " is not available", exception);
+        }
+    }
+
+    /**
+     * @return the hex encoded SHA-1 hash of the contents of {@code file}
+     */
+    public static String sha1(final Path file) throws IOException {
+        final MessageDigest digest = newDigest();
+        try (final InputStream inputStream = Files.newInputStream(file)) {
+            final byte[] buffer = new byte[65536];
+            for (int length; (length = inputStream.read(buffer)) != -1; ) {
+                digest.update(buffer, 0, length);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    public static String toHex(final byte[] bytes) {
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Hard links {@code target} to {@code source}, replacing any existing file. Falls back to a copy when the two paths
+     * are on different filesystems or the filesystem does not support links.
+     */
+    public static void linkOrCopy(final Path source, final Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (final IOException | UnsupportedOperationException exception) {
+            sLogger.debug("Could not link \"" + source + "\"; Copying it instead", exception);
+            copy(source, target);
+        }
+    }
+
+    /**
+     * @return whether {@code first} and {@code second} are on the same filesystem; each path, or the nearest existing
+     *     parent of it, is examined
+     */
+    public static boolean isSameFileStore(final Path first, final Path second) throws IOException {
+        return Files.getFileStore(nearestExisting(first)).equals(Files.getFileStore(nearestExisting(second)));
+    }
+
+    /**
+     * Makes {@code target} a copy-on-write clone of {@code source}, replacing any existing file, by running {@code cp
+     * --reflink=always}. Only filesystems with reflink support (such as Btrfs, XFS or ZFS) can do this.
+     *
+     * @throws IOException if the clone could not be made
+     */
+    public static void reflink(final Path source, final Path target) throws IOException {
+        final Process process = new ProcessBuilder(
+            "cp",
+            "--reflink=always",
+            "--preserve=timestamps",
+            source.toString(),
+            target.toString())
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("Could not reflink \"" + source + "\" to \"" + target + "\"");
+            }
+        } catch (final InterruptedException exception) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reflink of \"" + source + "\" was interrupted");
+        }
+    }
+
+    /**
+     * Recreates the tree under {@code source} beneath {@code target} using {@link #linkOrCopy(Path, Path)} for each
+     * file. Top-level entries whose names are in {@code excludedNames} are skipped.
+     */
+    public static void linkTree(final Path source, final Path target, final Set<String> excludedNames)
+        throws IOException {
+
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                throws IOException {
+
+                if (isExcluded(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (!isExcluded(file)) {
+                    linkOrCopy(file, target.resolve(source.relativize(file)));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            private boolean isExcluded(final Path path) {
+                return path.getParent() != null
+                    && path.getParent().equals(source)
+                    && excludedNames.contains(path.getFileName().toString());
+            }
+        });
+    }
+
+    /**
+     * @return {@code 1} if {@code path} exists and could not be deleted, otherwise {@code 0}
+     */
+    private static int delete(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+            return 0;
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to delete \"" + path + "\"", exception);
+            return 1;
+        }
+    }
+
+    private static Path nearestExisting(final Path path) {
+        Path existing = path.toAbsolutePath();
+        while (Files.notExists(existing) && existing.getParent() != null) {
+            existing = existing.getParent();
+        }
+        return existing;
+    }
+
+    /**
+     * Deletes a directory after deleting its files in parallel batches and each of its subdirectories as a task of its
+     * own.
+     */
+    private static final class DeleteDirectoryTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path mDirectory;
+
+        DeleteDirectoryTask(final Path directory) {
+            mDirectory = directory;
+        }
+
+        @Override
+        protected Integer compute() {
+            final List<ForkJoinTask<Integer>> tasks = new ArrayList<>();
+            final List<Path> files = new ArrayList<>();
+            try (final DirectoryStream<Path> entries = Files.newDirectoryStream(mDirectory)) {
+                for (final Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        tasks.add(new DeleteDirectoryTask(entry).fork());
+                    } else {
+                        files.add(entry);
+                    }
+                }
+            } catch (final IOException exception) {
+                sLogger.warn("Failed to list \"" + mDirectory + "\"", exception);
+                return 1 + tasks.stream().mapToInt(ForkJoinTask::join).sum();
+            }
+
+            for (int start = 0; start < files.size(); start += DELETE_BATCH_SIZE) {
+                tasks.add(new DeleteFilesTask(files.subList(start, Math.min(start + DELETE_BATCH_SIZE, files.size())))
+                    .fork());
+            }
+
+            int failures = 0;
+            for (final ForkJoinTask<Integer> task : tasks) {
+                failures += task.join();
+            }
+            // A directory that still has entries cannot be deleted, and counts as a failure itself
+            return failures == 0 ? delete(mDirectory) : failures + 1;
+        }
+    }
+
+    private static final class DeleteFilesTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> mFiles;
+
+        DeleteFilesTask(final List<Path> files) {
+            mFiles = files;
+        }
+
+        @Override
+        protected Integer compute() {
+            int failures = 0;
+            for (final Path file : mFiles) {
+                failures += delete(file);
+            }
+            return failures;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand;
+import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.TransportException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Updates the source repository in process with JGit by fetching the configured branch and fast-forwarding to it.
+ */
+public class GitRepository {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final String REMOTE_NAME = "origin";
+
+    private final Path mRepositoryPath;
+    private final String mBranchName;
+
+    public GitRepository(final Path repositoryPath, final String branchName) {
+        mRepositoryPath = repositoryPath;
+        mBranchName = branchName;
+    }
+
+    /**
+     * @return the commit currently checked out, or {@code null} if the repository has no commits
+     */
+    public String getHead() throws IOException {
+        try (final Git git = Git.open(mRepositoryPath.toFile())) {
+            final ObjectId head = git.getRepository().resolve(Constants.HEAD);
+            return head == null ? null : head.getName();
+        }
+    }
+
+    /**
+     * Fetches the branch from {@code origin} and fast-forwards the checked out branch to it. Local commits that would
+     * need a merge cause the update to fail rather than being merged.
+     */
+    public GitUpdate pull() throws IOException {
+        try (final Git git = Git.open(mRepositoryPath.toFile())) {
+            final Repository repository = git.getRepository();
+            final ObjectId oldHead = repository.resolve(Constants.HEAD);
+            final String remoteRef = Constants.R_REMOTES + REMOTE_NAME + "/" + mBranchName;
+
+            fetch(git, remoteRef);
+            final ObjectId fetchedHead = repository.resolve(remoteRef);
+            if (fetchedHead == null) {
+                throw new IOException("The branch \"" + mBranchName + "\" does not exist on " + REMOTE_NAME);
+            }
+
+            final MergeResult result = git.merge()
+                .include(fetchedHead)
+                .setFastForward(MergeCommand.FastForwardMode.FF_ONLY)
+                .call();
+            if (!result.getMergeStatus().isSuccessful()) {
+                throw new IOException(String.format(
+                    "Could not fast-forward \"%s\" to %s/%s: %s",
+                    mRepositoryPath,
+                    REMOTE_NAME,
+                    mBranchName,
+                    result.getMergeStatus()));
+            }
+
+            final ObjectId newHead = repository.resolve(Constants.HEAD);
+            return new GitUpdate(
+                oldHead == null ? null : oldHead.getName(),
+                newHead.getName(),
+                getChangedPaths(repository, oldHead, newHead));
+        } catch (final GitAPIException exception) {
+            throw new IOException("Failed to update \"" + mRepositoryPath + "\"", exception);
+        }
+    }
+
+    private void fetch(final Git git, final String remoteRef) throws GitAPIException, IOException {
+        final RefSpec refSpec = new RefSpec("+" + Constants.R_HEADS + mBranchName + ":" + remoteRef);
+        try {
+            git.fetch().setRemote(REMOTE_NAME).setRefSpecs(refSpec).call();
+        } catch (final TransportException exception) {
+            // JGit has no SSH transport of its own here, so SSH remotes are fetched with the git CLI and its keys
+            sLogger.info("Fetching with the git command instead: " + exception.getMessage());
+            final Process process = new ProcessBuilder("git", "fetch", REMOTE_NAME, refSpec.toString())
+                .directory(mRepositoryPath.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .start();
+            try {
+                if (process.waitFor() != 0) {
+                    throw new IOException("git fetch exited with status " + process.exitValue());
+                }
+            } catch (final InterruptedException interruptedException) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+                throw new IOException("git fetch was interrupted", interruptedException);
+            }
+        }
+    }
+
+    private static Set<String> getChangedPaths(
+        final Repository repository,
+        final ObjectId oldHead,
+        final ObjectId newHead) throws IOException {
+
+        final Set<String> changedPaths = new HashSet<>();
+        if (newHead.equals(oldHead)) {
+            return changedPaths;
+        }
+        try (final DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            diffFormatter.setRepository(repository);
+            // A missing old commit diffs against an empty tree, so every file counts as changed
+            for (final DiffEntry entry : diffFormatter.scan(oldHead, newHead)) {
+                if (!DiffEntry.DEV_NULL.equals(entry.getOldPath())) {
+                    changedPaths.add(entry.getOldPath());
+                }
+                if (!DiffEntry.DEV_NULL.equals(entry.getNewPath())) {
+                    changedPaths.add(entry.getNewPath());
+                }
+            }
+        }
+        return changedPaths;
+    }
+}
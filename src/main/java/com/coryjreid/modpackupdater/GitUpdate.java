@@ -0,0 +1,53 @@
+package com.coryjreid.modpackupdater;
+
+import java.util.Collections;
+import java.util.Set;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * The result of updating the source repository: the commits before and after, and the repository-relative paths that
+ * differ between them.
+ */
+@Immutable
+public class GitUpdate {
+    private final String mOldHead;
+    private final String mNewHead;
+    private final Set<String> mChangedPaths;
+
+    public GitUpdate(final String oldHead, final String newHead, final Set<String> changedPaths) {
+        mOldHead = oldHead;
+        mNewHead = newHead;
+        mChangedPaths = Collections.unmodifiableSet(changedPaths);
+    }
+
+    /**
+     * @return the commit checked out before the update, or {@code null} if the repository had no commits
+     */
+    public String getOldHead() {
+        return mOldHead;
+    }
+
+    public String getNewHead() {
+        return mNewHead;
+    }
+
+    /**
+     * @return paths, using {@code /} as the separator, that were added, modified or deleted by the update
+     */
+    public Set<String> getChangedPaths() {
+        return mChangedPaths;
+    }
+
+    /**
+     * @return whether anything at or beneath {@code path} changed
+     */
+    public boolean hasChangesUnder(final String path) {
+        final String prefix = path.endsWith("/") ? path : path + "/";
+        return mChangedPaths.stream().anyMatch(changed -> changed.equals(path) || changed.startsWith(prefix));
+    }
+
+    public boolean isChanged() {
+        return !mNewHead.equals(mOldHead);
+    }
+}
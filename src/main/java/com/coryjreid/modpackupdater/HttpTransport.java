@@ -0,0 +1,108 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single pooled HTTP client shared by every outgoing request of a run. Connections are kept alive and reused per
+ * host, and HTTP/2 is negotiated where the server supports it so concurrent requests to one host are multiplexed over
+ * a single connection.
+ */
+public class HttpTransport {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final HttpClient mClient;
+    private final Duration mReadTimeout;
+    private final Map<String, AtomicInteger> mRequestsByHost = new ConcurrentHashMap<>();
+    private final LongAdder mHttp2Responses = new LongAdder();
+
+    public HttpTransport(final Duration connectTimeout, final Duration readTimeout) {
+        mClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(connectTimeout)
+            .build();
+        mReadTimeout = readTimeout;
+    }
+
+    /**
+     * Sends a GET request. The caller must close the body of the returned response.
+     */
+    public HttpResponse<InputStream> get(final String url, final Map<String, String> headers) throws IOException {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).timeout(mReadTimeout).GET();
+        headers.forEach(builder::header);
+        return send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    public HttpResponse<String> postJson(final String url, final String body) throws IOException {
+        final HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+            .timeout(mReadTimeout)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        return send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * @return how long to wait for a response to start, which {@link ModDownloader} also applies to gaps in a body
+     */
+    public Duration getReadTimeout() {
+        return mReadTimeout;
+    }
+
+    /**
+     * Logs the number of requests made to each host since the counts were last logged, and how many were answered over
+     * HTTP/2, then starts counting again. The transport outlives a run in daemon mode, so this is called once per run.
+     */
+    public void logRequestCounts() {
+        final Map<String, Integer> requestsByHost = new TreeMap<>();
+        for (final String host : mRequestsByHost.keySet()) {
+            final AtomicInteger count = mRequestsByHost.remove(host);
+            if (count != null) {
+                requestsByHost.put(host, count.get());
+            }
+        }
+        final long http2Responses = mHttp2Responses.sumThenReset();
+        final int requests = requestsByHost.values().stream().mapToInt(Integer::intValue).sum();
+        if (requests == 0) {
+            return;
+        }
+        sLogger.info(String.format(
+            "Made %s HTTP requests to %s hosts (%s answered over HTTP/2)",
+            requests,
+            requestsByHost.size(),
+            http2Responses));
+        requestsByHost.forEach((host, count) -> sLogger.debug(String.format("%s requests to %s", count, host)));
+    }
+
+    private <T> HttpResponse<T> send(final HttpRequest request, final HttpResponse.BodyHandler<T> bodyHandler)
+        throws IOException {
+
+        mRequestsByHost.computeIfAbsent(request.uri().getHost(), host -> new AtomicInteger()).incrementAndGet();
+        try {
+            final HttpResponse<T> response = mClient.send(request, bodyHandler);
+            if (response.version() == HttpClient.Version.HTTP_2) {
+                mHttp2Responses.increment();
+            }
+            return response;
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request to " + request.uri() + " was interrupted");
+        }
+    }
+}
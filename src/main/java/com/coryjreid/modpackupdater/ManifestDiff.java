@@ -0,0 +1,154 @@
+package com.coryjreid.modpackupdater;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.coryjreid.modpackupdater.json.Mod;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * Classifies every mod of a modpack manifest against the installed mods as an addition, replacement, removal or
+ * unchanged. Mods are matched by mod ID using hash lookups, so computing a diff is linear in the size of the manifests.
+ */
+@Immutable
+public class ManifestDiff {
+    private final List<Mod> mAdditions;
+    private final List<Mod> mReplacements;
+    private final List<Mod> mReplaced;
+    private final List<Mod> mRemovals;
+    private final List<Mod> mUnchanged;
+
+    private ManifestDiff(
+        final List<Mod> additions,
+        final List<Mod> replacements,
+        final List<Mod> replaced,
+        final List<Mod> removals,
+        final List<Mod> unchanged) {
+
+        mAdditions = Collections.unmodifiableList(additions);
+        mReplacements = Collections.unmodifiableList(replacements);
+        mReplaced = Collections.unmodifiableList(replaced);
+        mRemovals = Collections.unmodifiableList(removals);
+        mUnchanged = Collections.unmodifiableList(unchanged);
+    }
+
+    public static ManifestDiff compute(final Collection<Mod> installedMods, final Collection<Mod> modpackMods) {
+        final Map<Integer, Mod> installedById = new HashMap<>(installedMods.size() * 2);
+        installedMods.forEach(mod -> installedById.put(mod.getModId(), mod));
+
+        final List<Mod> additions = new ArrayList<>();
+        final List<Mod> replacements = new ArrayList<>();
+        final List<Mod> replaced = new ArrayList<>();
+        final List<Mod> unchanged = new ArrayList<>();
+        for (final Mod mod : modpackMods) {
+            final Mod installed = installedById.remove(mod.getModId());
+            if (installed == null) {
+                additions.add(mod);
+            } else if (installed.getFileId() != mod.getFileId()) {
+                replacements.add(mod);
+                replaced.add(installed);
+            } else {
+                unchanged.add(installed);
+            }
+        }
+
+        // Whatever was not matched by the modpack is no longer part of it
+        return new ManifestDiff(additions, replacements, replaced, new ArrayList<>(installedById.values()), unchanged);
+    }
+
+    /**
+     * Computes the diff against a binary installed manifest by looking each modpack mod up in the mapped records. Only
+     * the records of replaced and removed mods are decoded in full. An unchanged mod is represented by its modpack
+     * entry carrying the installed file's recorded hash.
+     */
+    public static ManifestDiff compute(final BinaryInstalledManifest installed, final Collection<Mod> modpackMods) {
+        final boolean[] matched = new boolean[installed.size()];
+        final List<Mod> additions = new ArrayList<>();
+        final List<Mod> replacements = new ArrayList<>();
+        final List<Mod> replaced = new ArrayList<>();
+        final List<Mod> unchanged = new ArrayList<>();
+        for (final Mod mod : modpackMods) {
+            final int index = installed.indexOf(mod.getModId());
+            if (index < 0) {
+                additions.add(mod);
+                continue;
+            }
+            matched[index] = true;
+            if (installed.getFileId(index) != mod.getFileId()) {
+                replacements.add(mod);
+                replaced.add(installed.getMod(index));
+            } else {
+                final String sha1 = installed.getSha1(index);
+                unchanged.add(sha1 == null ? mod : mod.toBuilder().setModFileHash(sha1).build());
+            }
+        }
+
+        final List<Mod> removals = new ArrayList<>();
+        for (int index = 0; index < matched.length; index++) {
+            if (!matched[index]) {
+                removals.add(installed.getMod(index));
+            }
+        }
+        return new ManifestDiff(additions, replacements, replaced, removals, unchanged);
+    }
+
+    /**
+     * @return mods in the modpack that are not installed
+     */
+    public List<Mod> getAdditions() {
+        return mAdditions;
+    }
+
+    /**
+     * @return the modpack version of mods installed with a different file
+     */
+    public List<Mod> getReplacements() {
+        return mReplacements;
+    }
+
+    /**
+     * @return the installed version of mods being replaced, in the same order as {@link #getReplacements()}
+     */
+    public List<Mod> getReplaced() {
+        return mReplaced;
+    }
+
+    /**
+     * @return installed mods that are no longer in the modpack
+     */
+    public List<Mod> getRemovals() {
+        return mRemovals;
+    }
+
+    /**
+     * @return installed mods whose file is unchanged, with the hash recorded when they were installed
+     */
+    public List<Mod> getUnchanged() {
+        return mUnchanged;
+    }
+
+    public List<Mod> getModsToDownload() {
+        final List<Mod> mods = new ArrayList<>(mAdditions);
+        mods.addAll(mReplacements);
+        return mods;
+    }
+
+    public List<Mod> getModsToDelete() {
+        final List<Mod> mods = new ArrayList<>(mRemovals);
+        mods.addAll(mReplaced);
+        return mods;
+    }
+
+    public long getDownloadBytes() {
+        return getModsToDownload().stream().mapToLong(Mod::getFileLength).sum();
+    }
+
+    public boolean isEmpty() {
+        return mAdditions.isEmpty() && mReplacements.isEmpty() && mRemovals.isEmpty();
+    }
+}
@@ -0,0 +1,205 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.coryjreid.modpackupdater.json.Mod;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An on-disk store of downloaded mod files keyed by mod ID and file ID. Files are installed into the mods folder by
+ * hard link when possible and by copy otherwise. The least recently installed entries are evicted once the cache grows
+ * beyond its configured size.
+ */
+public class ModCache {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * The SHA-1 hash computed while an entry was downloaded is stored next to it in a file with this suffix.
+     */
+    private static final String HASH_FILE_SUFFIX = ".sha1";
+
+    private final Path mCacheRoot;
+    private final long mMaxSizeBytes;
+    private final Set<Path> mRetained = new HashSet<>();
+
+    public ModCache(final Path cacheRoot, final long maxSizeBytes) {
+        mCacheRoot = cacheRoot;
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    public Path getEntryPath(final Mod mod) {
+        return mCacheRoot
+            .resolve(String.valueOf(mod.getModId()))
+            .resolve(String.valueOf(mod.getFileId()))
+            .resolve(mod.getFileName());
+    }
+
+    public boolean contains(final Mod mod) {
+        final Path entry = getEntryPath(mod);
+        try {
+            if (!Files.isRegularFile(entry) || Files.size(entry) != mod.getFileLength()) {
+                return false;
+            }
+        } catch (final IOException exception) {
+            return false;
+        }
+        final String hash = getHash(mod);
+        return mod.getSha1() == null || hash == null || mod.getSha1().equalsIgnoreCase(hash);
+    }
+
+    /**
+     * @return the hex encoded SHA-1 hash of the cached file of {@code mod}, or {@code null} if it is not cached
+     */
+    public String getHash(final Mod mod) {
+        final Path entry = getEntryPath(mod);
+        final Path hashFile = getHashPath(entry);
+        try {
+            if (Files.exists(hashFile)) {
+                return Files.readString(hashFile).trim();
+            }
+            if (Files.notExists(entry)) {
+                return null;
+            }
+            // Entries completed by an aborted batch never had their hash recorded
+            final String hash = FileOperations.sha1(entry);
+            Files.writeString(hashFile, hash);
+            return hash;
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to read the hash of \"" + entry + "\"", exception);
+            return null;
+        }
+    }
+
+    public List<Mod> getMissing(final Collection<Mod> mods) {
+        return mods.stream().filter(mod -> !contains(mod)).collect(Collectors.toList());
+    }
+
+    public void recordHash(final Mod mod, final String hash) throws IOException {
+        Files.writeString(getHashPath(getEntryPath(mod)), hash);
+    }
+
+    public void install(final Mod mod, final Path modsFolder) throws IOException {
+        final Path entry = getEntryPath(mod);
+        final Path target = modsFolder.resolve(mod.getFileName());
+
+        FileOperations.linkOrCopy(entry, target);
+
+        // The modification time of an entry records when it was last used and drives eviction
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    /**
+     * Keeps the entries of {@code mods} out of every eviction until they are released, so updating one server cannot
+     * evict files that another server sharing the cache has yet to install.
+     */
+    public synchronized void retain(final Collection<Mod> mods) {
+        mods.forEach(mod -> mRetained.add(getEntryPath(mod)));
+    }
+
+    public synchronized void release(final Collection<Mod> mods) {
+        mods.forEach(mod -> mRetained.remove(getEntryPath(mod)));
+    }
+
+    public synchronized void evict(final Collection<Mod> pinnedMods) {
+        final Set<Path> pinned = new HashSet<>(mRetained);
+        pinnedMods.forEach(mod -> pinned.add(getEntryPath(mod)));
+
+        final List<Path> entries = new ArrayList<>();
+        try {
+            if (Files.notExists(mCacheRoot)) {
+                return;
+            }
+            Files.walkFileTree(mCacheRoot, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    // Partial downloads are left for the next attempt to resume, so they are never evicted
+                    if (!file.getFileName().toString().endsWith(HASH_FILE_SUFFIX)
+                        && !ModDownloader.isPartialDownload(file)) {
+                        entries.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to scan the mod cache \"" + mCacheRoot + "\"", exception);
+            return;
+        }
+
+        long cacheSize = entries.stream().mapToLong(ModCache::sizeOf).sum();
+        if (cacheSize <= mMaxSizeBytes) {
+            return;
+        }
+
+        entries.sort(Comparator.comparing(ModCache::lastModifiedOf));
+        int evicted = 0;
+        for (final Path entry : entries) {
+            if (cacheSize <= mMaxSizeBytes) {
+                break;
+            }
+            if (pinned.contains(entry)) {
+                continue;
+            }
+            final long entrySize = sizeOf(entry);
+            try {
+                Files.delete(entry);
+                Files.deleteIfExists(getHashPath(entry));
+                deleteEmptyParents(entry.getParent());
+                cacheSize -= entrySize;
+                evicted++;
+            } catch (final IOException exception) {
+                sLogger.warn("Failed to evict \"" + entry + "\" from the mod cache", exception);
+            }
+        }
+        sLogger.info(String.format("Evicted %s mod files from the cache (%s bytes remain)", evicted, cacheSize));
+    }
+
+    private void deleteEmptyParents(final Path directory) throws IOException {
+        Path current = directory;
+        while (current != null && !current.equals(mCacheRoot)) {
+            try (final Stream<Path> children = Files.list(current)) {
+                if (children.findAny().isPresent()) {
+                    return;
+                }
+            }
+            Files.delete(current);
+            current = current.getParent();
+        }
+    }
+
+    private static Path getHashPath(final Path entry) {
+        return entry.resolveSibling(entry.getFileName() + HASH_FILE_SUFFIX);
+    }
+
+    private static FileTime lastModifiedOf(final Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (final IOException exception) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static long sizeOf(final Path path) {
+        try {
+            return Files.size(path);
+        } catch (final IOException exception) {
+            return 0;
+        }
+    }
+}
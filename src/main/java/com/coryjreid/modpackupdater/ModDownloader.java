@@ -0,0 +1,402 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.coryjreid.modpackupdater.json.Mod;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads a batch of mod files using a bounded number of concurrent connections. Files are received into a
+ * {@code .part} file alongside a small journal so an interrupted download can be resumed with an HTTP range request,
+ * and are only renamed into place once complete and verified. A batch either completes in full or fails as a whole.
+ */
+public class ModDownloader {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final long TERMINATION_TIMEOUT_SECONDS = 30;
+    private static final long INITIAL_RETRY_DELAY_MILLIS = 1000;
+    private static final String PART_FILE_SUFFIX = ".part";
+    private static final String JOURNAL_FILE_SUFFIX = ".part.journal";
+    private static final String JOURNAL_KEY_URL = "url";
+    private static final String JOURNAL_KEY_LENGTH = "length";
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final long MAX_IDLE_CHECK_INTERVAL_MILLIS = 1000;
+
+    private final int mConcurrency;
+    private final int mMaxAttempts;
+    private final HttpTransport mHttpTransport;
+    private final Duration mIdleTimeout;
+
+    /**
+     * Notified from the download threads as each mod file completes.
+     */
+    @FunctionalInterface
+    public interface DownloadListener {
+        void onDownloaded(Mod mod, Duration elapsed);
+    }
+
+    public ModDownloader(final int concurrency, final int maxAttempts, final HttpTransport httpTransport) {
+        mConcurrency = Math.max(1, concurrency);
+        mMaxAttempts = Math.max(1, maxAttempts);
+        mHttpTransport = httpTransport;
+        mIdleTimeout = httpTransport.getReadTimeout();
+    }
+
+    /**
+     * @return the hex encoded SHA-1 hash of each downloaded file, computed while it was received
+     */
+    public Map<Mod, String> download(final Collection<Mod> mods, final Function<Mod, Path> destination)
+        throws IOException {
+
+        return download(mods, destination, (mod, elapsed) -> {});
+    }
+
+    /**
+     * @return the hex encoded SHA-1 hash of each downloaded file, computed while it was received
+     */
+    public Map<Mod, String> download(
+        final Collection<Mod> mods,
+        final Function<Mod, Path> destination,
+        final DownloadListener listener) throws IOException {
+
+        final Map<Mod, String> hashes = new HashMap<>();
+        if (mods.isEmpty()) {
+            sLogger.info("No mods to download");
+            return hashes;
+        }
+
+        final long totalBytes = mods.stream().mapToLong(Mod::getFileLength).sum();
+        final int threadCount = Math.min(mConcurrency, mods.size());
+        sLogger.info(String.format(
+            "Beginning download of %s mods (%s bytes) using %s connections",
+            mods.size(),
+            totalBytes,
+            threadCount));
+
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+            final Thread thread = new Thread(runnable, "mod-download-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final CompletionService<Map.Entry<Mod, String>> completionService = new ExecutorCompletionService<>(executor);
+        // The HTTP client's timeout only covers the response headers, so stalled bodies are cut off by a watchdog
+        final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "mod-download-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            for (final Mod mod : mods) {
+                final Path modFilePath = destination.apply(mod);
+                completionService.submit(() -> {
+                    final long startNanos = System.nanoTime();
+                    final String hash = downloadWithRetries(mod, modFilePath, watchdog);
+                    listener.onDownloaded(mod, Duration.ofNanos(System.nanoTime() - startNanos));
+                    return Map.entry(mod, hash);
+                });
+            }
+
+            long receivedBytes = 0;
+            for (int completed = 1; completed <= mods.size(); completed++) {
+                final Map.Entry<Mod, String> result = completionService.take().get();
+                final Mod mod = result.getKey();
+                hashes.put(mod, result.getValue());
+                receivedBytes += mod.getFileLength();
+                sLogger.info(String.format(
+                    "Downloaded (%s/%s) \"%s\" - %s/%s bytes total",
+                    completed,
+                    mods.size(),
+                    mod.getFileName(),
+                    receivedBytes,
+                    totalBytes));
+            }
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            abortBatch(executor);
+            throw new InterruptedIOException("Mod download was interrupted");
+        } catch (final ExecutionException exception) {
+            abortBatch(executor);
+            if (exception.getCause() instanceof IOException) {
+                throw (IOException) exception.getCause();
+            }
+            throw new IOException("Mod download failed", exception.getCause());
+        } finally {
+            executor.shutdownNow();
+            watchdog.shutdownNow();
+        }
+
+        sLogger.info("Finished download of " + mods.size() + " mods");
+        return hashes;
+    }
+
+    /**
+     * Stops the remaining downloads. Files already completed are left in place, as are partial files and their
+     * journals so the next attempt can resume them.
+     */
+    private static void abortBatch(final ExecutorService executor) {
+        sLogger.error("Aborting download of the remaining mods");
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                sLogger.warn("Timed out waiting for in-flight downloads to stop");
+            }
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return whether {@code file} is the partial file or journal of a download that has yet to complete
+     */
+    static boolean isPartialDownload(final Path file) {
+        final String fileName = file.getFileName().toString();
+        return fileName.endsWith(PART_FILE_SUFFIX) || fileName.endsWith(JOURNAL_FILE_SUFFIX);
+    }
+
+    private static void discardPartialDownload(final Path partFile, final Path journalFile) throws IOException {
+        Files.deleteIfExists(partFile);
+        Files.deleteIfExists(journalFile);
+    }
+
+    private String downloadModFile(
+        final Mod mod,
+        final Path modFilePath,
+        final ScheduledExecutorService watchdog) throws IOException {
+
+        Files.createDirectories(modFilePath.getParent());
+        final Path partFile = modFilePath.resolveSibling(modFilePath.getFileName() + PART_FILE_SUFFIX);
+        final Path journalFile = modFilePath.resolveSibling(modFilePath.getFileName() + JOURNAL_FILE_SUFFIX);
+
+        final MessageDigest digest = FileOperations.newDigest();
+        long offset = getResumeOffset(mod, partFile, journalFile);
+        if (offset > 0) {
+            // Bring the digest up to date with the bytes already received
+            try (final InputStream inputStream = Files.newInputStream(partFile)) {
+                final byte[] buffer = new byte[65536];
+                for (int length; (length = inputStream.read(buffer)) != -1; ) {
+                    digest.update(buffer, 0, length);
+                }
+            }
+        } else {
+            writeJournal(mod, journalFile);
+        }
+
+        final HttpResponse<InputStream> response = mHttpTransport.get(
+            mod.getDownloadUrl(),
+            offset > 0 ? Map.of("Range", "bytes=" + offset + "-") : Map.of());
+        if (response.statusCode() == HTTP_PARTIAL_CONTENT) {
+            sLogger.info(String.format("Resuming \"%s\" from byte %s", modFilePath, offset));
+        } else if (response.statusCode() == HTTP_OK) {
+            if (offset > 0) {
+                sLogger.info("Server ignored the range request for \"" + modFilePath + "\"; Restarting it");
+                digest.reset();
+                offset = 0;
+            }
+        } else {
+            response.body().close();
+            throw new IOException(String.format(
+                "Received HTTP %s for %s",
+                response.statusCode(),
+                mod.getDownloadUrl()));
+        }
+
+        // Closing the body unblocks a read that has waited longer than the idle timeout for more data
+        final InputStream body = response.body();
+        final AtomicLong lastReadNanos = new AtomicLong(System.nanoTime());
+        final AtomicBoolean stalled = new AtomicBoolean();
+        final long idleCheckInterval = Math.min(MAX_IDLE_CHECK_INTERVAL_MILLIS, mIdleTimeout.toMillis());
+        final ScheduledFuture<?> idleCheck = watchdog.scheduleWithFixedDelay(() -> {
+            if (System.nanoTime() - lastReadNanos.get() > mIdleTimeout.toNanos()
+                && stalled.compareAndSet(false, true)) {
+                try {
+                    body.close();
+                } catch (final IOException exception) {
+                    sLogger.debug("Failed to close the stalled download of \"" + modFilePath + "\"", exception);
+                }
+            }
+        }, idleCheckInterval, idleCheckInterval, TimeUnit.MILLISECONDS);
+
+        long totalRead = offset;
+        try (
+            final InputStream inputStream = body;
+            final FileChannel outputChannel = FileChannel.open(
+                partFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                offset > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            sLogger.debug("Downloading \"" + modFilePath + "\"");
+            // Filling a large buffer before each write keeps the number of write system calls low
+            final byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+            int buffered = 0;
+            try {
+                for (int length; (length = inputStream.read(buffer, buffered, buffer.length - buffered)) != -1; ) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Download of \"" + modFilePath + "\" was cancelled");
+                    }
+                    lastReadNanos.set(System.nanoTime());
+                    buffered += length;
+                    if (buffered == buffer.length) {
+                        totalRead += writeBuffer(outputChannel, digest, buffer, buffered);
+                        buffered = 0;
+                    }
+                }
+            } finally {
+                // Keep whatever was received so a retry can resume after it
+                totalRead += writeBuffer(outputChannel, digest, buffer, buffered);
+            }
+        } catch (final IOException exception) {
+            throw stalled.get() ? createStalledException(modFilePath, exception) : exception;
+        } finally {
+            idleCheck.cancel(false);
+        }
+        if (stalled.get()) {
+            throw createStalledException(modFilePath, null);
+        }
+
+        if (totalRead != mod.getFileLength()) {
+            if (totalRead > mod.getFileLength()) {
+                discardPartialDownload(partFile, journalFile);
+            }
+            throw new IOException(String.format(
+                "Only received %s/%s bytes for %s",
+                totalRead,
+                mod.getFileLength(),
+                modFilePath));
+        }
+
+        final String hash = FileOperations.toHex(digest.digest());
+        if (mod.getSha1() != null && !mod.getSha1().equalsIgnoreCase(hash)) {
+            discardPartialDownload(partFile, journalFile);
+            throw new IOException(String.format(
+                "Expected SHA-1 %s but received %s for %s",
+                mod.getSha1(),
+                hash,
+                modFilePath));
+        }
+
+        Files.move(partFile, modFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(journalFile);
+        return hash;
+    }
+
+    private IOException createStalledException(final Path modFilePath, final IOException cause) {
+        return new IOException(
+            String.format("Received nothing for \"%s\" in %s seconds", modFilePath, mIdleTimeout.toSeconds()),
+            cause);
+    }
+
+    private String downloadWithRetries(
+        final Mod mod,
+        final Path modFilePath,
+        final ScheduledExecutorService watchdog) throws IOException {
+
+        long retryDelay = INITIAL_RETRY_DELAY_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return downloadModFile(mod, modFilePath, watchdog);
+            } catch (final InterruptedIOException exception) {
+                throw exception;
+            } catch (final IOException exception) {
+                if (attempt >= mMaxAttempts) {
+                    throw exception;
+                }
+                sLogger.warn(String.format(
+                    "Attempt %s/%s to download \"%s\" failed; Retrying in %s ms: %s",
+                    attempt,
+                    mMaxAttempts,
+                    mod.getFileName(),
+                    retryDelay,
+                    exception.getMessage()));
+                try {
+                    Thread.sleep(retryDelay);
+                } catch (final InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Download of \"" + modFilePath + "\" was cancelled");
+                }
+                retryDelay *= 2;
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes from a previous attempt that can be kept, or {@code 0} to start over
+     */
+    private static long getResumeOffset(final Mod mod, final Path partFile, final Path journalFile)
+        throws IOException {
+
+        if (Files.notExists(partFile) || Files.notExists(journalFile)) {
+            return 0;
+        }
+
+        final Properties journal = new Properties();
+        try (final InputStream inputStream = Files.newInputStream(journalFile)) {
+            journal.load(inputStream);
+        }
+        final long partLength = Files.size(partFile);
+        if (!mod.getDownloadUrl().equals(journal.getProperty(JOURNAL_KEY_URL))
+            || !String.valueOf(mod.getFileLength()).equals(journal.getProperty(JOURNAL_KEY_LENGTH))
+            || partLength >= mod.getFileLength()) {
+            discardPartialDownload(partFile, journalFile);
+            return 0;
+        }
+        return partLength;
+    }
+
+    private static int writeBuffer(
+        final FileChannel channel,
+        final MessageDigest digest,
+        final byte[] buffer,
+        final int length) throws IOException {
+
+        digest.update(buffer, 0, length);
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+        return length;
+    }
+
+    private static void writeJournal(final Mod mod, final Path journalFile) throws IOException {
+        final Properties journal = new Properties();
+        journal.setProperty(JOURNAL_KEY_URL, mod.getDownloadUrl());
+        journal.setProperty(JOURNAL_KEY_LENGTH, String.valueOf(mod.getFileLength()));
+        try (final OutputStream outputStream = Files.newOutputStream(journalFile)) {
+            journal.store(outputStream, null);
+        }
+    }
+}
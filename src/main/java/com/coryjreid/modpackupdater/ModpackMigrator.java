@@ -1,12 +1,12 @@
 package com.coryjreid.modpackupdater;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.invoke.MethodHandles;
-import java.net.URL;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -14,21 +14,32 @@ import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 import com.coryjreid.modpackupdater.json.InstalledManifest;
+import com.coryjreid.modpackupdater.json.Json;
 import com.coryjreid.modpackupdater.json.Mod;
 import com.coryjreid.modpackupdater.json.ModpackManifest;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.goebl.david.Webb;
+import com.fasterxml.jackson.databind.JsonNode;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,17 +56,118 @@ public class ModpackMigrator {
      * This is the manifest file this tool writes to the mods folder to track the versions of installed mods.
      */
     private static final String INSTALLED_MANIFEST_FILE_NAME = "installed_manifest.json";
+
+    /**
+     * This is the compact binary form of the installed manifest, used instead of the JSON one when enabled.
+     */
+    private static final String BINARY_INSTALLED_MANIFEST_FILE_NAME = "installed_manifest.bin";
     private static final String MODS_FOLDER = "mods";
 
+    /**
+     * This file in the server root records the commit and content fingerprint of the last successful update.
+     */
+    private static final String DEPLOYMENT_STATE_FILE_NAME = ".modpackupdater-state";
+
+    /**
+     * This file in the server root is locked for the whole of an update, so that overlapping runs do not both update.
+     */
+    private static final String RUN_LOCK_FILE_NAME = ".modpackupdater-lock";
+
+    /**
+     * The updated mods folder is assembled under this suffix and renamed into place once complete.
+     */
+    private static final String STAGING_FOLDER_SUFFIX = ".staging";
+
+    /**
+     * The live mods folder is moved aside under this suffix while the staged one is swapped in.
+     */
+    private static final String PREVIOUS_FOLDER_SUFFIX = ".previous";
+
+    /**
+     * Conservative throughput assumptions used to estimate the downtime of an update in plan mode.
+     */
+    private static final long ESTIMATED_DOWNLOAD_BYTES_PER_SECOND = 5L * 1024 * 1024;
+    private static final long ESTIMATED_COPY_BYTES_PER_SECOND = 50L * 1024 * 1024;
+
+    /**
+     * How long to wait to connect to the server's RCON port and for each response.
+     */
+    private static final Duration RCON_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * How long to wait for the response to a reload command, which a large modpack can take a while to finish.
+     */
+    private static final Duration RCON_RELOAD_TIMEOUT = Duration.ofMinutes(2);
+
+    /**
+     * Matches the reply to {@code list}, e.g. "There are 2 of a max of 20 players online: ..." or, from older servers,
+     * "There are 2/20 players online: ...".
+     */
+    private static final Pattern ONLINE_PLAYERS_PATTERN =
+        Pattern.compile("There are (\\d+)(?: of a max of |/)\\d+ players online");
+
+    /**
+     * How often the shutdown countdown checks whether everyone has logged off.
+     */
+    private static final int PLAYER_CHECK_INTERVAL_SECONDS = 5;
+
+    /**
+     * Matches the line a Minecraft server logs once it has started, e.g. "Done (23.456s)! For help, type "help"".
+     */
+    private static final Pattern SERVER_DONE_PATTERN = Pattern.compile("Done \\((\\d+[.,]\\d+)s\\)!");
+    private static final Duration READY_POLL_INTERVAL = Duration.ofSeconds(2);
+
     private final ModpackMigratorProperties mProperties;
     private final String mServerRootPath;
     private final String mRepositoryPath;
     private final Set<String> mFoldersToUpdate;
+    private final HttpTransport mHttpTransport;
+    private final ModDownloader mModDownloader;
+    private final ModCache mModCache;
+    private final DirectorySync mDirectorySync;
+    private final GitRepository mGitRepository;
+    private final DockerClient mDockerClient;
+    private final RconClient mRconClient;
 
     private Path mModpackManifestFile;
     private Path mInstalledManifestFile;
+    private Path mBinaryInstalledManifestFile;
+    private ModpackManifest mModpackManifest;
+    private ManifestDiff mModDiff;
+    private GitUpdate mGitUpdate;
+    private Set<String> mUnchangedFolders = Set.of();
+    private RunMetrics mRunMetrics;
+    private boolean mStepFailed;
 
     public ModpackMigrator(final ModpackMigratorProperties properties) {
+        this(properties, createHttpTransport(properties), createModCache(properties));
+    }
+
+    /**
+     * Creates a migrator that shares its HTTP connections and mod cache with the migrators of other servers.
+     */
+    public ModpackMigrator(
+        final ModpackMigratorProperties properties,
+        final HttpTransport httpTransport,
+        final ModCache modCache) {
+
+        this(
+            properties,
+            httpTransport,
+            modCache,
+            new DockerClient(
+                properties.getDockerSocketPath().isEmpty() ? null : Paths.get(properties.getDockerSocketPath())));
+    }
+
+    /**
+     * Creates a migrator that controls the server's container through {@code dockerClient}.
+     */
+    ModpackMigrator(
+        final ModpackMigratorProperties properties,
+        final HttpTransport httpTransport,
+        final ModCache modCache,
+        final DockerClient dockerClient) {
+
         mProperties = properties;
         mServerRootPath = (mProperties.getServerRootPath().endsWith(File.separator)
                                ? mProperties.getServerRootPath()
@@ -64,25 +176,166 @@ public class ModpackMigrator {
                                ? mProperties.getSourceRepositoryPath()
                                : mProperties.getSourceRepositoryPath() + File.separator);
         mFoldersToUpdate = new HashSet<>(properties.getManagedFolders());
+        mHttpTransport = httpTransport;
+        mModDownloader = new ModDownloader(
+            properties.getDownloadConcurrency(),
+            properties.getDownloadAttempts(),
+            mHttpTransport);
+        mModCache = modCache;
+        mDirectorySync = new DirectorySync(
+            properties.isSyncCompareHashes(),
+            properties.getSyncCopyMode(),
+            properties.getSyncParallelism());
+        mGitRepository = new GitRepository(Paths.get(mRepositoryPath), properties.getGitBranchName());
+        mRunMetrics = new RunMetrics(properties.getTargetName());
+        mDockerClient = dockerClient;
+        mRconClient = properties.isRconEnabled()
+            ? new RconClient(
+                properties.getRconHost(),
+                properties.getRconPort(),
+                properties.getRconPassword(),
+                RCON_TIMEOUT)
+            : null;
     }
 
-    public final void doModpackUpdate() {
-        doGitCheckout();
-        verifyRequiredFilesExist();
-        sLogger.info("Beginning modpack update");
-        if (mProperties.isDiscordWebhookEnabled()) {
-            postDiscordMessage(String.format(
-                "%s Server shutting down for an update in %s seconds! Please wait...",
-                mProperties.getDiscordMentionId().isEmpty() ? "" : "<@&" + mProperties.getDiscordMentionId() + ">",
-                mProperties.getShutdownNoticeTime()));
+    /**
+     * @param force update even if nothing has changed since the last successful update
+     */
+    public final void doModpackUpdate(final boolean force) throws ModpackUpdateException {
+        try (final RunLock lock = tryLockRun()) {
+            if (lock == null) {
+                return;
+            }
+            beginRun();
+            doGitCheckout();
+            if (prepareUpdate(force, mProperties.isStageDownloads())) {
+                applyUpdate();
+            }
+        } finally {
+            mHttpTransport.logRequestCounts();
+        }
+    }
+
+    public static HttpTransport createHttpTransport(final ModpackMigratorProperties properties) {
+        return new HttpTransport(
+            Duration.ofSeconds(properties.getHttpConnectTimeout()),
+            Duration.ofSeconds(properties.getHttpReadTimeout()));
+    }
+
+    public static ModCache createModCache(final ModpackMigratorProperties properties) {
+        return new ModCache(Paths.get(properties.getModCachePath()), properties.getModCacheMaxSizeBytes());
+    }
+
+    /**
+     * @return the metrics of the current or most recent update
+     */
+    public final RunMetrics getRunMetrics() {
+        return mRunMetrics;
+    }
+
+    /**
+     * Locks the server root against other updates until the returned lock is closed.
+     *
+     * @return the lock, or {@code null} if another update of this server is already running
+     */
+    final RunLock tryLockRun() throws ModpackUpdateException {
+        final Path lockFile = Paths.get(mServerRootPath, RUN_LOCK_FILE_NAME);
+        try {
+            final RunLock lock = RunLock.tryAcquire(lockFile);
+            if (lock == null) {
+                sLogger.info("Another update of \"" + mServerRootPath + "\" is already running; Skipping this run");
+            }
+            return lock;
+        } catch (final IOException exception) {
+            throw new ModpackUpdateException("Failed to lock \"" + lockFile + "\"", exception);
         }
+    }
+
+    /**
+     * Starts recording the metrics of a new update.
+     */
+    final void beginRun() {
+        mRunMetrics = new RunMetrics(mProperties.getTargetName());
+        mStepFailed = false;
+    }
+
+    /**
+     * Works out what the update changes and downloads mods ahead of it, without touching the server. The run's report
+     * is written here when the update ends early.
+     *
+     * @param stageDownloads download the new mods now rather than while the server is stopped
+     * @return whether there is an update to apply
+     */
+    final boolean prepareUpdate(final boolean force, final boolean stageDownloads) throws ModpackUpdateException {
+        boolean prepared = false;
+        try {
+            verifyRequiredFilesExist();
+            if (!force && isDeployed()) {
+                mRunMetrics.finish("skipped");
+                return false;
+            }
+            mUnchangedFolders = findUnchangedFolders(force);
+            doModStaging(stageDownloads);
+            prepared = true;
+            return true;
+        } finally {
+            if (!prepared) {
+                writeRunReports();
+            }
+        }
+    }
+
+    /**
+     * @return the mods the prepared update installs
+     */
+    final List<Mod> getModsToDownload() {
+        return mModDiff.getModsToDownload();
+    }
+
+    /**
+     * Applies a prepared update, live if possible and otherwise by restarting the server.
+     */
+    final void applyUpdate() throws ModpackUpdateException {
+        try {
+            applyUpdateSteps();
+        } finally {
+            mDockerClient.close();
+            if (mRconClient != null) {
+                mRconClient.close();
+            }
+            // A run that fails part way still reports, with its outcome left as failed
+            writeRunReports();
+        }
+    }
+
+    private void applyUpdateSteps() throws ModpackUpdateException {
+        if (mProperties.isLiveReload() && doLiveUpdate()) {
+            recordDeploymentState(captureDeploymentState());
+            mRunMetrics.finish("live");
+            sLogger.info("Finished modpack update without a restart");
+            return;
+        }
+        sLogger.info("Beginning modpack update");
         doDockerShutdown();
-        doServerRootCleanup();
         doServerRootUpdates();
         doServerConfigUpdate();
         doModUpdate();
         doUpdateServerProperties();
-        doDockerStart();
+        final DeploymentState deployed = captureDeploymentState();
+        final Instant startedAt = doDockerStart();
+        // A server that exits while starting fails the run before the state is recorded, so the next run deploys again
+        final boolean ready = waitForServerReady(startedAt);
+        recordDeploymentState(deployed);
+        if (!ready) {
+            // The files are in place and the server is still starting, so redeploying would only restart it again
+            mRunMetrics.finish("not_ready");
+            sLogger.error(String.format(
+                "The server in Docker container \"%s\" did not finish starting within %s seconds; It was left running",
+                mProperties.getDockerContainerName(),
+                mProperties.getStartupTimeout()));
+            return;
+        }
+        mRunMetrics.finish("restarted");
         sLogger.info("Finished modpack update");
         if (mProperties.isDiscordWebhookEnabled()) {
             postDiscordMessage(String.format(
@@ -91,182 +344,614 @@ public class ModpackMigrator {
         }
     }
 
-    private void copyDirectoryContents(final String sourcePathString, final String destinationPathString) {
+    /**
+     * Logs what an update would change, how much would be downloaded, and roughly how long the server would be down,
+     * without stopping the server or modifying the server root.
+     */
+    public final void printUpdatePlan() throws ModpackUpdateException {
+        doGitCheckout();
+        verifyRequiredFilesExist();
+        mUnchangedFolders = findUnchangedFolders(false);
         try {
-            final Path source = Paths.get(sourcePathString);
-            final Path target = Paths.get(destinationPathString);
+            loadModDiff();
+        } catch (final IOException exception) {
+            throw new ModpackUpdateException("Failed to read the manifests", exception);
+        }
 
-            Files.walkFileTree(source, new SimpleFileVisitor<>() {
-                @Override
-                public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
-                    throws IOException {
+        mModDiff.getAdditions().forEach(mod -> sLogger.info("  + " + mod.getFileName()));
+        for (int i = 0; i < mModDiff.getReplacements().size(); i++) {
+            sLogger.info(String.format(
+                "  ~ %s -> %s",
+                mModDiff.getReplaced().get(i).getFileName(),
+                mModDiff.getReplacements().get(i).getFileName()));
+        }
+        mModDiff.getRemovals().forEach(mod -> sLogger.info("  - " + mod.getFileName()));
 
-                    final Path path = target.resolve(source.relativize(dir));
-                    if (!path.toFile().exists()) {
-                        Files.createDirectory(path);
-                    }
-                    return FileVisitResult.CONTINUE;
-                }
+        final List<Mod> uncached = mModCache.getMissing(mModDiff.getModsToDownload());
+        final long uncachedBytes = uncached.stream().mapToLong(Mod::getFileLength).sum();
+        sLogger.info(String.format(
+            "Mods: %s to add, %s to replace, %s to remove, %s unchanged; %s bytes to download (%s mods already cached)",
+            mModDiff.getAdditions().size(),
+            mModDiff.getReplacements().size(),
+            mModDiff.getRemovals().size(),
+            mModDiff.getUnchanged().size(),
+            uncachedBytes,
+            mModDiff.getModsToDownload().size() - uncached.size()));
 
-                @Override
-                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
-                    Files.copy(file, target.resolve(source.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
-                    return FileVisitResult.CONTINUE;
+        long copyBytes = 0;
+        boolean restartRequired = true;
+        try {
+            final Map<String, SyncPlan> folderPlans = planFolderSyncs();
+            for (final SyncPlan plan : folderPlans.values()) {
+                copyBytes += plan.getCopyBytes();
+                sLogger.info(String.format(
+                    "\"%s\": %s files to copy (%s bytes), %s to delete, %s unchanged",
+                    plan.getTarget(),
+                    plan.getCopies().size(),
+                    plan.getCopyBytes(),
+                    plan.getDeletions().size(),
+                    plan.getUnchangedCount()));
+            }
+            if (mProperties.isLiveReload()) {
+                final ChangeClassification classification =
+                    ChangeClassification.classify(mModDiff, isMotdChanged(), folderPlans);
+                restartRequired = classification.isRestartRequired();
+                sLogger.info(restartRequired
+                    ? "A restart is required because " + String.join(", ", classification.getRestartReasons())
+                    : "The update can be applied live with " + classification.getReloadCommands());
+            }
+        } catch (final IOException exception) {
+            sLogger.error("Failed to compare the managed folders", exception);
+        }
+
+        if (!restartRequired) {
+            sLogger.info("Estimated downtime: none");
+            return;
+        }
+        final long downtimeBytes = mProperties.isStageDownloads() ? 0 : uncachedBytes;
+        final long estimatedDowntime =
+            downtimeBytes / getMeasuredThroughput("downloadBytesPerSecond", ESTIMATED_DOWNLOAD_BYTES_PER_SECOND)
+                + copyBytes / getMeasuredThroughput("copyBytesPerSecond", ESTIMATED_COPY_BYTES_PER_SECOND)
+                + 1;
+        final int noticeTime = mProperties.getShutdownNoticeTime();
+        sLogger.info(String.format(
+            "Estimated downtime: ~%s seconds, %s",
+            estimatedDowntime,
+            noticeTime > 0 ? "after a " + noticeTime + " second shutdown countdown" : "with no shutdown countdown"));
+    }
+
+    /**
+     * Rehashes every mod in the mods folder and compares it against the hash recorded in the installed manifest.
+     *
+     * @return {@code true} if every installed mod is present and matches its recorded hash
+     */
+    public final boolean verifyInstalledMods() throws ModpackUpdateException {
+        verifyRequiredFilesExist();
+        final Path modsFolder = Paths.get(mProperties.getServerRootPath(), MODS_FOLDER);
+        final AtomicInteger unhashed = new AtomicInteger();
+        final int modCount;
+        final long failures;
+        try {
+            if (isInstalledManifestBinary()) {
+                // Only the file name, length and hash of each record are read from the mapping
+                final BinaryInstalledManifest installedManifest =
+                    BinaryInstalledManifest.open(mBinaryInstalledManifestFile);
+                modCount = installedManifest.size();
+                failures = IntStream.range(0, modCount).parallel().filter(index -> !isModFileValid(
+                    modsFolder.resolve(installedManifest.getFileName(index)),
+                    installedManifest.getFileLength(index),
+                    installedManifest.getSha1(index),
+                    unhashed)).count();
+            } else {
+                final Collection<Mod> installedMods = readJsonInstalledMods();
+                if (installedMods == null) {
+                    sLogger.error("There is no installed manifest to verify against");
+                    return false;
                 }
-            });
-            sLogger.info("Copied \"" + sourcePathString + "\" to \"" + destinationPathString + "\"");
+                modCount = installedMods.size();
+                failures = installedMods.parallelStream().filter(mod -> !isModFileValid(
+                    modsFolder.resolve(mod.getFileName()),
+                    mod.getFileLength(),
+                    mod.getSha1(),
+                    unhashed)).count();
+            }
         } catch (final IOException exception) {
-            sLogger.error("Failed to walk \"" + sourcePathString + "\"", exception);
+            sLogger.error("Failed to read the installed manifest", exception);
+            return false;
         }
+
+        sLogger.info(String.format(
+            "Verified %s installed mods: %s failed, %s had no recorded hash and were only length checked",
+            modCount,
+            failures,
+            unhashed.get()));
+        return failures == 0;
     }
 
-    private void deleteModFiles(final Collection<Mod> mods) throws IOException {
-        int count = 1;
-        for (final Mod mod : mods) {
-            final Path path = Paths.get(mProperties.getServerRootPath(), MODS_FOLDER, mod.getFileName());
-            sLogger.info(String.format("Deleting (%s/%s) %s", count++, mods.size(), path));
-            Files.delete(path);
+    /**
+     * @param sha1 the recorded hash of the file, or {@code null} to only check its length
+     * @param unhashed counts the files that had no recorded hash
+     */
+    private static boolean isModFileValid(
+        final Path modFile,
+        final long fileLength,
+        final String sha1,
+        final AtomicInteger unhashed) {
+
+        try {
+            if (Files.size(modFile) != fileLength) {
+                sLogger.error(String.format(
+                    "\"%s\" is %s bytes but should be %s bytes",
+                    modFile,
+                    Files.size(modFile),
+                    fileLength));
+                return false;
+            }
+            if (sha1 == null) {
+                unhashed.incrementAndGet();
+                return true;
+            }
+            final String hash = FileOperations.sha1(modFile);
+            if (!hash.equalsIgnoreCase(sha1)) {
+                sLogger.error(String.format("\"%s\" has SHA-1 %s but should be %s", modFile, hash, sha1));
+                return false;
+            }
+            return true;
+        } catch (final IOException exception) {
+            sLogger.error("Failed to read \"" + modFile + "\"", exception);
+            return false;
         }
     }
 
-    private void doDockerShutdown() {
-        final int countdownDuration = mProperties.getShutdownNoticeTime();
-        final String containerName = mProperties.getDockerContainerName();
+    private void deleteQuietly(final Path path) {
+        final int failures = FileOperations.deleteTree(path);
+        if (failures > 0) {
+            sLogger.warn(String.format("Failed to delete %s entries of \"%s\"", failures, path));
+        }
+    }
 
-        executeRconCommand("say Modpack upgrade scheduled in "
-            + countdownDuration
-            + " seconds. Get to a stopping point!", containerName);
-        executeRconCommand("say In ~5 minutes restart your client to pickup the changes.", containerName);
+    /**
+     * Fingerprints everything an update deploys from besides the commit: the settings that decide where content goes,
+     * the size and modification time of every source file, and the installed manifest this tool wrote to the server.
+     */
+    private String computeContentFingerprint() throws IOException {
+        final MessageDigest digest = FileOperations.newDigest();
+        final List<String> folders = getSourceFolders();
+        digest.update(describeSettings().getBytes(StandardCharsets.UTF_8));
 
-        sLogger.info("Shutting server down in " + countdownDuration + " seconds");
-        for (int seconds = (countdownDuration - 1); seconds > 0; seconds--) {
-            final String secondsString = (seconds == 1 ? " second" : " seconds");
-            if (seconds % 5 == 0 || seconds <= 10) {
-                executeRconCommand("say Shutdown in " + seconds + secondsString, containerName);
+        final SortedMap<String, BasicFileAttributes> files = new TreeMap<>();
+        final Path[] manifestFiles = {mModpackManifestFile, mInstalledManifestFile, mBinaryInstalledManifestFile};
+        for (final Path file : manifestFiles) {
+            if (Files.exists(file)) {
+                files.put(file.toString(), Files.readAttributes(file, BasicFileAttributes.class));
             }
-            sLogger.info("Shutting server down in " + seconds + secondsString);
-            try {
-                Thread.sleep(1000);
-            } catch (final InterruptedException exception) {
-                sLogger.warn("Shutdown loop was interrupted", exception);
+        }
+        for (final String folder : folders) {
+            final Path sourceFolder = Paths.get(mRepositoryPath, folder);
+            if (Files.isDirectory(sourceFolder)) {
+                Files.walkFileTree(sourceFolder, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                        files.put(file.toString(), attrs);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
             }
         }
+        digestFileAttributes(digest, files);
+        return FileOperations.toHex(digest.digest());
+    }
 
-        sLogger.info("Stopping Docker container");
-        executeDockerCommand("stop", containerName);
+    /**
+     * @return a fingerprint of the size and modification time of every file in each source folder, keyed by folder
+     */
+    private Map<String, String> computeFolderFingerprints() throws IOException {
+        final Map<String, String> fingerprints = new TreeMap<>();
+        for (final String folder : getSourceFolders()) {
+            fingerprints.put(folder, computeFolderFingerprint(folder));
+        }
+        return fingerprints;
     }
 
-    private void doDockerStart() {
-        sLogger.info("Starting Docker container");
-        executeDockerCommand("start", mProperties.getDockerContainerName());
+    private String computeFolderFingerprint(final String folder) throws IOException {
+        final Path sourceFolder = Paths.get(mRepositoryPath, folder);
+        final SortedMap<String, BasicFileAttributes> files = new TreeMap<>();
+        if (Files.isDirectory(sourceFolder)) {
+            Files.walkFileTree(sourceFolder, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    files.put(sourceFolder.relativize(file).toString(), attrs);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        final MessageDigest digest = FileOperations.newDigest();
+        digestFileAttributes(digest, files);
+        return FileOperations.toHex(digest.digest());
     }
 
-    private void doGitCheckout() {
-        try {
-            final ProcessBuilder processBuilder =
-                new ProcessBuilder("git", "pull", "origin", mProperties.getGitBranchName());
-            processBuilder.directory(new File(mRepositoryPath));
-            final Process process = processBuilder.start();
-            process.waitFor();
-            sLogger.info("Updated the source repository");
-        } catch (final IOException | InterruptedException exception) {
-            sLogger.error("An error occurred updating the Git repository from origin master", exception);
+    /**
+     * Adds the path, size and modification time of each file to {@code digest}, in path order.
+     */
+    private static void digestFileAttributes(
+        final MessageDigest digest,
+        final SortedMap<String, BasicFileAttributes> files) {
+
+        for (final Map.Entry<String, BasicFileAttributes> file : files.entrySet()) {
+            final String entry = String.format(
+                "%s\t%s\t%s\n",
+                file.getKey(),
+                file.getValue().size(),
+                file.getValue().lastModifiedTime().toMillis());
+            digest.update(entry.getBytes(StandardCharsets.UTF_8));
         }
     }
 
-    private void doModUpdate() {
-        final Path modsFolder = Paths.get(mProperties.getServerRootPath(), MODS_FOLDER);
+    /**
+     * @return the managed folders and the server config source folder, sorted
+     */
+    private List<String> getSourceFolders() {
+        final List<String> folders = new ArrayList<>(mFoldersToUpdate);
+        folders.add("defaultconfigs");
+        Collections.sort(folders);
+        return folders;
+    }
 
-        try {
-            if (Files.notExists(modsFolder)) {
-                Files.createDirectory(modsFolder);
-            }
+    /**
+     * @return the settings that decide where the source content is deployed to
+     */
+    private String describeSettings() {
+        return getSourceFolders() + "\n"
+            + mProperties.getMinecraftWorldName() + "\n"
+            + mProperties.isSetMotd() + "\n"
+            + mProperties.isBinaryInstalledManifest() + "\n";
+    }
 
-            final ObjectMapper mapper = new ObjectMapper();
-            final ModpackManifest modpackManifest =
-                mapper.readValue(mModpackManifestFile.toFile(), ModpackManifest.class);
+    private String hashSettings() {
+        final byte[] settings = describeSettings().getBytes(StandardCharsets.UTF_8);
+        return FileOperations.toHex(FileOperations.newDigest().digest(settings));
+    }
 
-            final boolean isNewInstall = Files.notExists(mInstalledManifestFile);
-            final InstalledManifest installedManifest = isNewInstall
-                ? InstalledManifest.builder().setMods(modpackManifest.getModFiles()).build()
-                : InstalledManifest.deserializeFromFile(mInstalledManifestFile.toFile());
+    private void doDockerShutdown() throws ModpackUpdateException {
+        final String containerName = mProperties.getDockerContainerName();
+        final int noticeTime = Math.max(0, mProperties.getShutdownNoticeTime());
+        final boolean playerAware = mProperties.isPlayerAwareCountdown();
+        final boolean serverEmpty = noticeTime > 0 && playerAware && getOnlinePlayerCount(containerName) == 0;
+        final int countdownDuration = serverEmpty ? 0 : noticeTime;
 
-            final List<Mod> toDownload = new ArrayList<>();
-            final List<Mod> toReplace = new ArrayList<>();
-            if (isNewInstall) {
-                toDownload.addAll(installedManifest.getMods().values());
-            } else {
-                // Handle modpack removals
-                if (installedManifest.getMods().size() > modpackManifest.getModFiles().size()) {
-                    final List<Mod> modpackRemovals = new ArrayList<>(installedManifest.getMods().values());
-                    modpackRemovals.removeAll(modpackManifest.getModFiles());
-                    for (final Mod mod : modpackRemovals) {
-                        installedManifest.getMods().remove(mod.getModId());
-                        Files.delete(Paths.get(mProperties.getServerRootPath(), MODS_FOLDER, mod.getFileName()));
-                    }
+        if (mProperties.isDiscordWebhookEnabled()) {
+            postDiscordMessage(String.format(
+                "%s Server shutting down for an update %s! Please wait...",
+                mProperties.getDiscordMentionId().isEmpty() ? "" : "<@&" + mProperties.getDiscordMentionId() + ">",
+                countdownDuration == 0 ? "now" : "in " + countdownDuration + " seconds"));
+        }
+
+        if (serverEmpty) {
+            sLogger.info("No players are online; Skipping the shutdown countdown");
+        } else if (countdownDuration == 0) {
+            executeRconCommand("say Modpack upgrade starting now!", containerName);
+            executeRconCommand("say In ~5 minutes restart your client to pickup the changes.", containerName);
+            sLogger.info("Shutting server down without a countdown");
+        } else {
+            executeRconCommand("say Modpack upgrade scheduled in "
+                + countdownDuration
+                + " seconds. Get to a stopping point!", containerName);
+            executeRconCommand("say In ~5 minutes restart your client to pickup the changes.", containerName);
+            sLogger.info("Shutting server down in " + countdownDuration + " seconds");
+        }
+        mRunMetrics.time("countdown", () -> {
+            for (int seconds = (countdownDuration - 1); seconds > 0; seconds--) {
+                if (playerAware
+                    && seconds % PLAYER_CHECK_INTERVAL_SECONDS == 0
+                    && getOnlinePlayerCount(containerName) == 0) {
+                    sLogger.info("Every player has logged off; Ending the shutdown countdown early");
+                    break;
                 }
+                final String secondsString = (seconds == 1 ? " second" : " seconds");
+                if (seconds % 5 == 0 || seconds <= 10) {
+                    executeRconCommand("say Shutdown in " + seconds + secondsString, containerName);
+                }
+                sLogger.info("Shutting server down in " + seconds + secondsString);
+                try {
+                    Thread.sleep(1000);
+                } catch (final InterruptedException exception) {
+                    sLogger.warn("Shutdown loop was interrupted", exception);
+                }
+            }
+        });
 
-                for (final Mod mod : modpackManifest.getModFiles()) {
-                    final Map<Integer, Mod> currentlyInstalled = installedManifest.getMods();
-                    if (!currentlyInstalled.containsKey(mod.getModId())
-                        || currentlyInstalled.get(mod.getModId()).getFileId() != mod.getFileId()) {
-                        toDownload.add(mod);
-                    }
-                    if (currentlyInstalled.containsKey(mod.getModId())
-                        && currentlyInstalled.get(mod.getModId()).getFileId() != mod.getFileId()) {
-                        toReplace.add(currentlyInstalled.get(mod.getModId()));
-                    }
+        sLogger.info("Stopping Docker container");
+        if (mRconClient != null) {
+            mRconClient.close();
+        }
+        mRunMetrics.markServerStopped();
+        mRunMetrics.time("stop", () -> {
+            final DockerResult result = mDockerClient.stop(containerName);
+            if (!result.isSuccess()) {
+                throw new ModpackUpdateException(String.format(
+                    "Failed to stop Docker container \"%s\"; The server was not updated: %s",
+                    containerName,
+                    result.getOutput()));
+            }
+        });
+    }
+
+    /**
+     * @return when the container was asked to start
+     */
+    private Instant doDockerStart() throws ModpackUpdateException {
+        sLogger.info("Starting Docker container");
+        final Instant startedAt = Instant.now();
+        mRunMetrics.time("start", () -> {
+            final DockerResult result = mDockerClient.start(mProperties.getDockerContainerName());
+            if (!result.isSuccess()) {
+                throw new ModpackUpdateException(String.format(
+                    "Failed to start Docker container \"%s\" after updating it: %s",
+                    mProperties.getDockerContainerName(),
+                    result.getOutput()));
+            }
+        });
+        return startedAt;
+    }
+
+    /**
+     * Waits until the server can accept players, which ends its downtime. The server is ready once its log has the
+     * {@code Done (x.xxxs)!} line or it answers an RCON command.
+     *
+     * @param startedAt when the container was asked to start
+     * @return whether the server became ready, or {@code false} if it was still starting when the timeout ran out
+     */
+    private boolean waitForServerReady(final Instant startedAt) throws ModpackUpdateException {
+        final int timeout = mProperties.getStartupTimeout();
+        if (timeout <= 0) {
+            mRunMetrics.markServerAvailable();
+            return true;
+        }
+
+        final String containerName = mProperties.getDockerContainerName();
+        sLogger.info("Waiting up to " + timeout + " seconds for the server to finish starting");
+        final AtomicBoolean ready = new AtomicBoolean();
+        mRunMetrics.time("wait_ready", () -> {
+            final long deadline = System.nanoTime() + Duration.ofSeconds(timeout).toNanos();
+            Instant logsSince = startedAt;
+            while (true) {
+                final Instant polledAt = Instant.now();
+                if (isServerReady(containerName, logsSince)) {
+                    ready.set(true);
+                    break;
+                }
+                // The next poll reads only newer lines, overlapping by a second so that none is missed
+                logsSince = polledAt.minusSeconds(1);
+                if (System.nanoTime() - deadline >= 0) {
+                    break;
+                }
+                try {
+                    Thread.sleep(READY_POLL_INTERVAL.toMillis());
+                } catch (final InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new ModpackUpdateException("Interrupted while waiting for the server to start", exception);
                 }
             }
+        });
+        if (!ready.get()) {
+            return false;
+        }
+        mRunMetrics.markServerAvailable();
+        sLogger.info(String.format(
+            "The server is ready after %.1f seconds of downtime",
+            mRunMetrics.getDowntimeMillis() / 1000.0));
+        return true;
+    }
 
-            deleteModFiles(toReplace);
-            downloadModFiles(toDownload, modsFolder);
+    private boolean isServerReady(final String containerName, final Instant logsSince) throws ModpackUpdateException {
+        final DockerResult logs = mDockerClient.logs(containerName, logsSince);
+        if (logs.isSuccess()) {
+            final Matcher matcher = SERVER_DONE_PATTERN.matcher(logs.getOutput());
+            if (matcher.find()) {
+                sLogger.info("The server reported starting in " + matcher.group(1) + " seconds");
+                return true;
+            }
+        }
 
-            toDownload.forEach(mod -> installedManifest.getMods().put(mod.getModId(), mod));
+        final JsonNode details = mDockerClient.inspect(containerName);
+        if (details != null && !details.path("State").path("Running").asBoolean(true)) {
+            throw new ModpackUpdateException(String.format(
+                "Docker container \"%s\" stopped while the server was starting",
+                containerName));
+        }
+        return queryRcon("list", containerName) != null;
+    }
+
+    final GitUpdate getGitUpdate() {
+        return mGitUpdate;
+    }
+
+    /**
+     * Uses the pull made by another migrator of the same source repository.
+     */
+    final void setGitUpdate(final GitUpdate gitUpdate) {
+        mGitUpdate = gitUpdate;
+    }
 
-            InstalledManifest.writeToFile(mInstalledManifestFile.toFile(), installedManifest);
+    final void doGitCheckout() {
+        try (final RunMetrics.Phase phase = mRunMetrics.startPhase("git")) {
+            mGitUpdate = mGitRepository.pull();
+            phase.addFiles(mGitUpdate.getChangedPaths().size());
+            if (mGitUpdate.isChanged()) {
+                sLogger.info(String.format(
+                    "Updated the source repository from %s to %s; %s paths changed",
+                    mGitUpdate.getOldHead(),
+                    mGitUpdate.getNewHead(),
+                    mGitUpdate.getChangedPaths().size()));
+                mGitUpdate.getChangedPaths().forEach(path -> sLogger.debug("Changed \"" + path + "\""));
+            } else {
+                sLogger.info("The source repository is already up to date at " + mGitUpdate.getNewHead());
+            }
         } catch (final IOException exception) {
-            sLogger.error("An error has occurred while performing the mod updates", exception);
-            System.exit(1);
+            mGitUpdate = null;
+            sLogger.error(
+                "An error occurred updating the Git repository from origin " + mProperties.getGitBranchName(),
+                exception);
         }
     }
 
-    private void doServerConfigUpdate() {
-        final String pathToDelete =
-            mServerRootPath + mProperties.getMinecraftWorldName() + File.separator + "serverconfig";
+    /**
+     * Applies the update to the running server if nothing in it needs a restart, syncing the changed folders and then
+     * having the server reload them over RCON.
+     *
+     * @return whether the update was applied, or {@code false} if it needs a restart instead, including when a sync or
+     *     reload failed part way
+     */
+    private boolean doLiveUpdate() {
+        final Map<String, SyncPlan> folderPlans;
         try {
-            Files.walk(Path.of(pathToDelete)).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
-            sLogger.info("Deleted \"" + pathToDelete + "\"");
+            folderPlans = planFolderSyncs();
         } catch (final IOException exception) {
-            sLogger.error("Failed to delete \"" + pathToDelete + "\"");
+            sLogger.error("Failed to compare the managed folders; Falling back to a restart", exception);
+            return false;
         }
 
-        copyDirectoryContents(
-            mRepositoryPath + "defaultconfigs",
-            mServerRootPath + File.separator + mProperties.getMinecraftWorldName() + File.separator + "serverconfig");
+        final ChangeClassification classification =
+            ChangeClassification.classify(mModDiff, isMotdChanged(), folderPlans);
+        if (classification.isRestartRequired()) {
+            sLogger.info("A restart is required because " + String.join(", ", classification.getRestartReasons()));
+            return false;
+        }
+
+        sLogger.info("Applying the update without a restart");
+        try (final RunMetrics.Phase phase = mRunMetrics.startPhase("sync_live")) {
+            for (final SyncPlan plan : folderPlans.values()) {
+                if (!plan.isEmpty() && !applySyncPlan(plan, phase)) {
+                    sLogger.warn("Falling back to a restart to finish the update");
+                    return false;
+                }
+            }
+        }
+        final AtomicBoolean reloaded = new AtomicBoolean();
+        mRunMetrics.time("reload", () -> {
+            final List<String> commands = new ArrayList<>(classification.getReloadCommands());
+            sLogger.info("Running " + commands + " on the server");
+            reloaded.set(executeRconCommands(commands, mProperties.getDockerContainerName(), RCON_RELOAD_TIMEOUT));
+        });
+        if (!reloaded.get()) {
+            sLogger.warn("The server did not reload the update; Falling back to a restart");
+        }
+        return reloaded.get();
     }
 
-    private void doServerRootCleanup() {
-        for (final String folder : mFoldersToUpdate) {
-            final String pathToDelete = mServerRootPath + folder;
+    private void doModStaging(final boolean stageDownloads) throws ModpackUpdateException {
+        try {
+            loadModDiff();
+            sLogger.info(String.format(
+                "Mod update requires %s downloads, %s replacements, and %s removals",
+                mModDiff.getModsToDownload().size(),
+                mModDiff.getReplacements().size(),
+                mModDiff.getRemovals().size()));
+            if (stageDownloads) {
+                downloadToCache(mModDiff.getModsToDownload(), "download_staged");
+                sLogger.info("Staged all mod downloads in \"" + mProperties.getModCachePath() + "\"");
+            }
+        } catch (final IOException exception) {
+            throw new ModpackUpdateException(
+                "An error has occurred while staging the mod updates; The server was not stopped",
+                exception);
+        }
+    }
+
+    private void doModUpdate() throws ModpackUpdateException {
+        final Path modsFolder = Paths.get(mProperties.getServerRootPath(), MODS_FOLDER);
+        final Path stagingFolder = Paths.get(mProperties.getServerRootPath(), MODS_FOLDER + STAGING_FOLDER_SUFFIX);
+        final Path previousFolder = Paths.get(mProperties.getServerRootPath(), MODS_FOLDER + PREVIOUS_FOLDER_SUFFIX);
+        // The new installed manifest is the unchanged mods plus every mod downloaded by this update
+        final List<Mod> installedMods = new ArrayList<>(mModDiff.getUnchanged());
+
+        try (final RunMetrics.Phase phase = mRunMetrics.startPhase("mod_update")) {
+            // Build the complete new mods folder next to the live one
+            deleteQuietly(stagingFolder);
+            Files.createDirectories(stagingFolder);
+            if (Files.exists(modsFolder)) {
+                final Set<String> droppedFiles = new HashSet<>();
+                droppedFiles.add(INSTALLED_MANIFEST_FILE_NAME);
+                droppedFiles.add(BINARY_INSTALLED_MANIFEST_FILE_NAME);
+                mModDiff.getModsToDelete().forEach(mod -> droppedFiles.add(mod.getFileName()));
+                FileOperations.linkTree(modsFolder, stagingFolder, droppedFiles);
+            }
+
+            // Anything not staged ahead of the shutdown (or evicted since) is fetched now
+            downloadToCache(mModDiff.getModsToDownload(), "download_during_downtime");
+            for (final Mod mod : mModDiff.getModsToDownload()) {
+                mModCache.install(mod, stagingFolder);
+                phase.addFiles(1);
+                phase.addBytes(mod.getFileLength());
+            }
+
+            for (final Mod mod : mModDiff.getModsToDownload()) {
+                final String hash = mModCache.getHash(mod);
+                installedMods.add(hash == null ? mod : mod.toBuilder().setModFileHash(hash).build());
+            }
+            final InstalledManifest installedManifest = InstalledManifest.builder().setMods(installedMods).build();
+            if (mProperties.isBinaryInstalledManifest()) {
+                BinaryInstalledManifest.write(
+                    stagingFolder.resolve(BINARY_INSTALLED_MANIFEST_FILE_NAME),
+                    installedManifest);
+            } else {
+                InstalledManifest.writeToFile(
+                    stagingFolder.resolve(INSTALLED_MANIFEST_FILE_NAME).toFile(),
+                    installedManifest);
+            }
+        } catch (final IOException exception) {
+            deleteQuietly(stagingFolder);
+            throw new ModpackUpdateException(
+                "An error occurred while preparing the mod updates; The mods folder is unchanged",
+                exception);
+        }
+
+        // Commit the new mods folder by swapping it in with two renames
+        try {
+            deleteQuietly(previousFolder);
+            if (Files.exists(modsFolder)) {
+                Files.move(modsFolder, previousFolder, StandardCopyOption.ATOMIC_MOVE);
+            }
             try {
-                Files.walk(Path.of(pathToDelete))
-                    .sorted(Comparator.reverseOrder())
-                    .map(Path::toFile)
-                    .forEach(File::delete);
-                sLogger.info("Deleted \"" + pathToDelete + "\"");
+                Files.move(stagingFolder, modsFolder, StandardCopyOption.ATOMIC_MOVE);
             } catch (final IOException exception) {
-                sLogger.error("Failed to delete \"" + pathToDelete + "\"");
+                if (Files.exists(previousFolder)) {
+                    Files.move(previousFolder, modsFolder, StandardCopyOption.ATOMIC_MOVE);
+                }
+                throw exception;
             }
+            sLogger.info("Swapped in the updated \"" + modsFolder + "\"");
+        } catch (final IOException exception) {
+            deleteQuietly(stagingFolder);
+            throw new ModpackUpdateException(
+                "Failed to swap in the updated mods folder; The mods folder is unchanged",
+                exception);
+        }
+
+        deleteQuietly(previousFolder);
+        mModCache.evict(installedMods);
+    }
+
+    private void doServerConfigUpdate() {
+        if (mUnchangedFolders.contains("defaultconfigs")) {
+            return;
+        }
+        try (final RunMetrics.Phase phase = mRunMetrics.startPhase("sync_server_config")) {
+            syncDirectory(
+                Paths.get(mRepositoryPath, "defaultconfigs"),
+                Paths.get(mServerRootPath, mProperties.getMinecraftWorldName(), "serverconfig"),
+                phase);
         }
     }
 
     private void doServerRootUpdates() {
-        for (final String folder : mFoldersToUpdate) {
-            if (folder.equals(MODS_FOLDER)) {
-                continue;
+        try (final RunMetrics.Phase phase = mRunMetrics.startPhase("sync_server_root")) {
+            for (final String folder : mFoldersToUpdate) {
+                if (folder.equals(MODS_FOLDER) || mUnchangedFolders.contains(folder)) {
+                    continue;
+                }
+                syncDirectory(Paths.get(mRepositoryPath, folder), Paths.get(mServerRootPath, folder), phase);
             }
-            copyDirectoryContents(mRepositoryPath + folder, mServerRootPath + folder);
         }
     }
 
@@ -282,105 +967,408 @@ public class ModpackMigrator {
         try (final InputStream inputStream = Files.newInputStream(Paths.get(serverPropertiesFilePath))) {
             serverProperties.load(inputStream);
         } catch (final IOException exception) {
-            sLogger.error("Could not read \"" + serverPropertiesFilePath + "\"");
+            // Writing the motd alone would drop every other server property
+            mStepFailed = true;
+            sLogger.error("Could not read \"" + serverPropertiesFilePath + "\"", exception);
+            return;
         }
 
         // Update the motd and save the properties to disk
         try (final OutputStream outputStream = Files.newOutputStream(Paths.get(serverPropertiesFilePath))) {
-            final String manifestFilePath = mRepositoryPath + "manifest.json";
+            final String motd = getMotd();
+
+            serverProperties.setProperty("motd", motd);
+            sLogger.info("Set the motd to \"" + motd + "\" in \"" + serverPropertiesFilePath + "\"");
+            serverProperties.store(outputStream, null);
+        } catch (final IOException exception) {
+            mStepFailed = true;
+            sLogger.error("Could not write \"" + serverPropertiesFilePath + "\"", exception);
+        }
+    }
+
+    /**
+     * @param phaseName the phase the downloads are recorded under in the run metrics
+     */
+    private void downloadToCache(final Collection<Mod> mods, final String phaseName) throws IOException {
+        final Map<Mod, String> hashes;
+        try (final RunMetrics.Phase phase = mRunMetrics.startPhase(phaseName)) {
+            final List<Mod> missing = mModCache.getMissing(mods);
+            hashes = mModDownloader.download(missing, mModCache::getEntryPath, mRunMetrics::recordDownload);
+            phase.addFiles(missing.size());
+            phase.addBytes(missing.stream().mapToLong(Mod::getFileLength).sum());
+        }
+        for (final Map.Entry<Mod, String> entry : hashes.entrySet()) {
+            mModCache.recordHash(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void executeRconCommand(final String command, final String containerName) {
+        executeRconCommands(List.of(command), containerName, RCON_TIMEOUT);
+    }
+
+    /**
+     * @return the number of players online according to the server's {@code list} command, or {@code -1} if it could
+     *     not be determined
+     */
+    private int getOnlinePlayerCount(final String containerName) {
+        final String response = queryRcon("list", containerName);
+        final int playerCount = parseOnlinePlayerCount(response);
+        if (playerCount < 0) {
+            sLogger.debug("Could not read the player count from \"" + response + "\"");
+        } else {
+            sLogger.info(playerCount + " players are online");
+        }
+        return playerCount;
+    }
 
+    /**
+     * @param response the server's reply to {@code list}, or {@code null} if there was none
+     * @return the number of players online, or {@code -1} if {@code response} does not state it
+     */
+    static int parseOnlinePlayerCount(final String response) {
+        final Matcher matcher = response == null ? null : ONLINE_PLAYERS_PATTERN.matcher(response);
+        return matcher == null || !matcher.find() ? -1 : Integer.parseInt(matcher.group(1));
+    }
+
+    /**
+     * @return the server's response to {@code command}, or {@code null} if the server could not be reached
+     */
+    private String queryRcon(final String command, final String containerName) {
+        if (mRconClient != null) {
             try {
-                final ObjectMapper mapper = new ObjectMapper();
-                final ModpackManifest modpackManifest =
-                    mapper.readValue(new File(manifestFilePath), ModpackManifest.class);
-                final String motd = "\u00A7fModpack: \u00A72"
-                    + modpackManifest.getModpackName()
-                    + " \u00A74"
-                    + modpackManifest.getModpackVersion();
-
-                serverProperties.setProperty("motd", motd);
-                sLogger.info("Set the motd to \"" + motd + "\" in \"" + serverPropertiesFilePath + "\"");
+                return mRconClient.execute(command);
             } catch (final IOException exception) {
-                sLogger.error("Failed to deserialize \"" + manifestFilePath + "\"", exception);
+                sLogger.debug("RCON command \"" + command + "\" failed", exception);
+                return null;
             }
+        }
+        final DockerResult result = mDockerClient.exec(containerName, "rcon-cli", command);
+        return result.isSuccess() ? result.getOutput() : null;
+    }
 
-            serverProperties.store(outputStream, null);
+    /**
+     * Runs the commands over the native RCON session when it is enabled, and otherwise through {@code rcon-cli} in the
+     * container.
+     *
+     * @param responseTimeout how long the native RCON session waits for each response
+     * @return whether every command was run
+     */
+    private boolean executeRconCommands(
+        final List<String> commands,
+        final String containerName,
+        final Duration responseTimeout) {
+
+        if (mRconClient != null) {
+            try {
+                final List<String> responses = mRconClient.executeAll(commands, responseTimeout);
+                for (int i = 0; i < commands.size(); i++) {
+                    sLogger.debug("\"" + commands.get(i) + "\" returned \"" + responses.get(i) + "\"");
+                }
+                return true;
+            } catch (final IOException exception) {
+                sLogger.error("The RCON commands " + commands + " failed", exception);
+                return false;
+            }
+        }
+        boolean executed = true;
+        for (final String command : commands) {
+            final DockerResult result = mDockerClient.exec(containerName, "rcon-cli", command);
+            if (!result.isSuccess()) {
+                sLogger.error("The RCON command \"" + command + "\" failed: " + result.getOutput());
+                executed = false;
+            }
+        }
+        return executed;
+    }
+
+    /**
+     * @return whether the commit and content fingerprint match the last successful update, in which case there is
+     *     nothing to deploy
+     */
+    private boolean isDeployed() {
+        try {
+            final DeploymentState deployed = DeploymentState.read(getDeploymentStateFile());
+            if (deployed == null) {
+                return false;
+            }
+            final DeploymentState current = new DeploymentState(
+                mGitRepository.getHead(),
+                computeContentFingerprint(),
+                hashSettings());
+            if (!current.equals(deployed)) {
+                sLogger.info(current.getCommit() != null && current.getCommit().equals(deployed.getCommit())
+                    ? "The managed content changed since the last update"
+                    : "The source repository moved from " + deployed.getCommit() + " to " + current.getCommit());
+                return false;
+            }
+            sLogger.info("Nothing changed since commit " + deployed.getCommit() + " was deployed; Skipping the update");
+            return true;
         } catch (final IOException exception) {
-            sLogger.error("Could not write \"" + serverPropertiesFilePath + "\"");
+            sLogger.warn("Failed to compare against the last update; Updating anyway", exception);
+            return false;
         }
     }
 
-    private void downloadModFiles(final Collection<Mod> mods, final Path installLocation) throws IOException {
-        sLogger.info("Beginning download of " + mods.size() + " mods");
-        int downloaded = 1;
-        for (final Mod mod : mods) {
-            final Path modFilePath = installLocation.resolve(mod.getFileName());
-            try (
-                final InputStream inputStream = new URL(mod.getDownloadUrl()).openStream();
-                final FileOutputStream outputStream = new FileOutputStream(modFilePath.toFile())) {
+    private boolean isMotdChanged() {
+        if (!mProperties.isSetMotd()) {
+            return false;
+        }
+        final Properties serverProperties = new Properties();
+        try (final InputStream inputStream = Files.newInputStream(Paths.get(mServerRootPath, "server.properties"))) {
+            serverProperties.load(inputStream);
+        } catch (final IOException exception) {
+            return true;
+        }
+        return !getMotd().equals(serverProperties.getProperty("motd"));
+    }
 
-                sLogger.info("Downloading (" + (downloaded++) + "/" + mods.size() + ") \"" + modFilePath + "\"");
-                final byte[] buffer = new byte[4096];
-                int totalRead = 0;
-                for (int length; (length = inputStream.read(buffer)) != -1; ) {
-                    totalRead += length;
-                    outputStream.write(buffer, 0, length);
-                }
-                if (totalRead == mod.getFileLength()) {
-                    sLogger.info(String.format("Received %s/%s bytes", totalRead, mod.getFileLength()));
-                } else {
-                    throw new IOException(String.format(
-                        "Only received %s/%s bytes for %s",
-                        modFilePath,
-                        totalRead,
-                        mod.getFileLength()));
+    private void loadModDiff() throws IOException {
+        // Parsed once here and reused by the rest of the update
+        mModpackManifest = ModpackManifest.deserializeFromFile(mModpackManifestFile.toFile());
+        if (isInstalledManifestBinary()) {
+            mModDiff = ManifestDiff.compute(
+                BinaryInstalledManifest.open(mBinaryInstalledManifestFile),
+                mModpackManifest.getModFiles());
+        } else {
+            final Collection<Mod> installedMods = readJsonInstalledMods();
+            mModDiff = ManifestDiff.compute(
+                installedMods == null ? List.of() : installedMods,
+                mModpackManifest.getModFiles());
+        }
+    }
+
+    /**
+     * @return the sync plan of each managed folder keyed by folder name, and of the server config folder keyed by
+     *     {@link ChangeClassification#SERVER_CONFIG_FOLDER}, leaving out folders unchanged since the last update
+     */
+    private Map<String, SyncPlan> planFolderSyncs() throws IOException {
+        final Map<String, SyncPlan> folderPlans = new LinkedHashMap<>();
+        for (final String folder : mFoldersToUpdate) {
+            if (!mUnchangedFolders.contains(folder)) {
+                folderPlans.put(
+                    folder,
+                    mDirectorySync.plan(Paths.get(mRepositoryPath, folder), Paths.get(mServerRootPath, folder)));
+            }
+        }
+        if (!mUnchangedFolders.contains("defaultconfigs")) {
+            folderPlans.put(
+                ChangeClassification.SERVER_CONFIG_FOLDER,
+                mDirectorySync.plan(
+                    Paths.get(mRepositoryPath, "defaultconfigs"),
+                    Paths.get(mServerRootPath, mProperties.getMinecraftWorldName(), "serverconfig")));
+        }
+        return folderPlans;
+    }
+
+    /**
+     * Finds the source folders whose fingerprint is the one recorded by the last successful update with the same
+     * settings. The server's copies of those folders already match the source, so they are neither compared nor synced.
+     * A folder the pull changed, or one edited in place since, does not match.
+     *
+     * @param force compare and sync every folder regardless
+     */
+    private Set<String> findUnchangedFolders(final boolean force) {
+        if (force) {
+            return Set.of();
+        }
+        final DeploymentState deployed;
+        try {
+            deployed = DeploymentState.read(getDeploymentStateFile());
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to read the last deployed state; Comparing every folder", exception);
+            return Set.of();
+        }
+        if (deployed == null || !hashSettings().equals(deployed.getSettings())) {
+            return Set.of();
+        }
+
+        final Set<String> unchangedFolders = new TreeSet<>();
+        try {
+            for (final String folder : getSourceFolders()) {
+                if ((mGitUpdate == null || !mGitUpdate.hasChangesUnder(folder))
+                    && computeFolderFingerprint(folder).equals(deployed.getFolderFingerprint(folder))) {
+                    unchangedFolders.add(folder);
                 }
             }
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to fingerprint the source folders; Comparing every folder", exception);
+            return Set.of();
+        }
+        if (!unchangedFolders.isEmpty()) {
+            sLogger.info("Skipping folders unchanged since commit " + deployed.getCommit() + ": " + unchangedFolders);
         }
-        sLogger.info("Finished download of " + mods.size() + " mods");
+        return unchangedFolders;
     }
 
-    private void executeDockerCommand(final String... args) {
+    private void postDiscordMessage(final String message) {
         try {
-            final List<String> commandWithArgs = new ArrayList<>();
-            commandWithArgs.add("docker");
-            commandWithArgs.addAll(Arrays.asList(args));
-            final ProcessBuilder processBuilder = new ProcessBuilder(commandWithArgs.toArray(new String[0]));
-            final Process process = processBuilder.start();
-            process.waitFor();
-        } catch (final IOException | InterruptedException exception) {
-            sLogger.error("An error occurred executing Docker command \"docker " + Arrays.toString(args) + "\"");
+            final String body = Json.MAPPER.writeValueAsString(Map.of("content", message));
+            final HttpResponse<String> response = mHttpTransport.postJson(mProperties.getDiscordWebhookUrl(), body);
+            if (response.statusCode() / 100 != 2) {
+                sLogger.error(String.format(
+                    "Discord rejected the webhook message with HTTP %s: %s",
+                    response.statusCode(),
+                    response.body()));
+            }
+        } catch (final IOException exception) {
+            sLogger.error("Failed to post the Discord webhook message", exception);
         }
     }
 
-    private void executeRconCommand(final String command, final String containerName) {
-        executeDockerCommand("exec", containerName, "rcon-cli", command);
+    private String getMotd() {
+        return "\u00A7fModpack: \u00A72"
+            + mModpackManifest.getModpackName()
+            + " \u00A74"
+            + mModpackManifest.getModpackVersion();
     }
 
-    private void postDiscordMessage(final String message) {
-        Webb.create()
-            .post(mProperties.getDiscordWebhookUrl())
-            .header("Content-Type", "application/json")
-            .body(String.format("{\"content\":\"%s\"}", message))
-            .asString()
-            .ensureSuccess();
+    private Path getDeploymentStateFile() {
+        return Paths.get(mServerRootPath, DEPLOYMENT_STATE_FILE_NAME);
     }
 
-    private void verifyRequiredFilesExist() {
+    /**
+     * @return the throughput recorded by the last run's report, or {@code fallback} if it has not measured any
+     */
+    private long getMeasuredThroughput(final String field, final long fallback) {
+        final Path reportFile = Paths.get(mProperties.getMetricsReportPath());
+        if (Files.notExists(reportFile)) {
+            return fallback;
+        }
+        try {
+            final long measured = Json.MAPPER.readTree(reportFile.toFile()).path(field).asLong();
+            return measured > 0 ? measured : fallback;
+        } catch (final IOException exception) {
+            sLogger.debug("Could not read \"" + reportFile + "\"", exception);
+            return fallback;
+        }
+    }
+
+    /**
+     * The installed manifest is read in the configured format, falling back to the other format so switching formats
+     * converts the existing manifest on the next update.
+     *
+     * @return whether the installed manifest should be read from the binary format
+     */
+    private boolean isInstalledManifestBinary() {
+        return Files.exists(mBinaryInstalledManifestFile)
+            && (mProperties.isBinaryInstalledManifest() || Files.notExists(mInstalledManifestFile));
+    }
+
+    /**
+     * @return the installed mods recorded in the JSON installed manifest, or {@code null} if there is none
+     */
+    private Collection<Mod> readJsonInstalledMods() throws IOException {
+        return Files.exists(mInstalledManifestFile)
+            ? InstalledManifest.deserializeFromFile(mInstalledManifestFile.toFile()).getMods().values()
+            : null;
+    }
+
+    /**
+     * @return the state of the content just deployed, or {@code null} if it could not be determined
+     */
+    private DeploymentState captureDeploymentState() {
+        try {
+            final String commit = mGitRepository.getHead();
+            return commit == null
+                ? null
+                : new DeploymentState(commit, computeContentFingerprint(), hashSettings(), computeFolderFingerprints());
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to read the deployed state; The next run will update again", exception);
+            return null;
+        }
+    }
+
+    /**
+     * Records the deployed state, unless a step of the update failed and left part of the server out of date.
+     */
+    private void recordDeploymentState(final DeploymentState state) {
+        if (mStepFailed) {
+            sLogger.error("Part of the update failed; The next run will update again");
+            return;
+        }
+        if (state == null) {
+            return;
+        }
+        try {
+            DeploymentState.write(getDeploymentStateFile(), state);
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to record the deployed state; The next run will update again", exception);
+        }
+    }
+
+    /**
+     * @return whether the sync succeeded
+     */
+    private boolean applySyncPlan(final SyncPlan plan, final RunMetrics.Phase phase) {
+        try {
+            mDirectorySync.apply(plan);
+            phase.addFiles(plan.getCopies().size());
+            phase.addBytes(plan.getCopyBytes());
+            return true;
+        } catch (final IOException exception) {
+            sLogger.error("Failed to sync \"" + plan.getSource() + "\" to \"" + plan.getTarget() + "\"", exception);
+            return false;
+        }
+    }
+
+    private void syncDirectory(final Path source, final Path target, final RunMetrics.Phase phase) {
+        final SyncPlan plan;
+        try {
+            plan = mDirectorySync.plan(source, target);
+        } catch (final IOException exception) {
+            mStepFailed = true;
+            sLogger.error("Failed to sync \"" + source + "\" to \"" + target + "\"", exception);
+            return;
+        }
+        if (!applySyncPlan(plan, phase)) {
+            mStepFailed = true;
+        }
+    }
+
+    /**
+     * Writes the run report and Prometheus textfile. A skipped run leaves the last report in place, since plan mode
+     * reads its measured throughput, and only records when it checked.
+     */
+    private void writeRunReports() {
+        final boolean skipped = "skipped".equals(mRunMetrics.getOutcome());
+        if (!skipped) {
+            try {
+                mRunMetrics.writeReport(Paths.get(mProperties.getMetricsReportPath()));
+            } catch (final IOException exception) {
+                sLogger.warn("Failed to write the run report", exception);
+            }
+        }
+        if (mProperties.getMetricsPrometheusTextfile().isEmpty()) {
+            return;
+        }
+        try {
+            final Path textfile = Paths.get(mProperties.getMetricsPrometheusTextfile());
+            if (skipped) {
+                mRunMetrics.writePrometheusLastCheck(textfile);
+            } else {
+                mRunMetrics.writePrometheusTextfile(textfile);
+            }
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to write the Prometheus textfile", exception);
+        }
+    }
+
+    private void verifyRequiredFilesExist() throws ModpackUpdateException {
         mModpackManifestFile = Paths.get(mProperties.getSourceRepositoryPath(), MODPACK_MANIFEST_FILE_NAME);
         mInstalledManifestFile = Paths.get(mProperties.getServerRootPath(), MODS_FOLDER, INSTALLED_MANIFEST_FILE_NAME);
+        mBinaryInstalledManifestFile =
+            Paths.get(mProperties.getServerRootPath(), MODS_FOLDER, BINARY_INSTALLED_MANIFEST_FILE_NAME);
 
         if (Files.notExists(mModpackManifestFile)) {
-            sLogger.error(String.format(
-                "The Modpack Manifest file '%s' does not exist; Shutting down",
+            throw new ModpackUpdateException(String.format(
+                "The Modpack Manifest file '%s' does not exist",
                 mModpackManifestFile));
-            System.exit(1);
         }
 
-        if (Files.notExists(mInstalledManifestFile)) {
+        if (Files.notExists(mInstalledManifestFile) && Files.notExists(mBinaryInstalledManifestFile)) {
             sLogger.warn(String.format(
                 "The Installed Manifest file '%s' does not exist; It will be created",
-                mInstalledManifestFile));
+                mProperties.isBinaryInstalledManifest() ? mBinaryInstalledManifestFile : mInstalledManifestFile));
         }
     }
 }
@@ -1,8 +1,12 @@
 package com.coryjreid.modpackupdater;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -16,21 +20,83 @@ public class ModpackMigratorProperties {
 
     private static final String KEY_PATHS_SOURCE_REPOSITORY = "paths.sourceRepository";
     private static final String KEY_PATHS_SERVER_ROOT = "paths.serverRoot";
+    private static final String KEY_PATHS_MOD_CACHE = "paths.modCache";
     private static final String KEY_PATHS_DOCKER_CONTAINER = "docker.containerName";
+    private static final String KEY_DOCKER_SOCKET = "docker.socket";
     private static final String KEY_MIGRATOR_SHUTDOWN_TIME = "migrator.shutdownWarningNoticeTime";
+    private static final String KEY_MIGRATOR_DOWNLOAD_CONCURRENCY = "migrator.downloadConcurrency";
+    private static final String KEY_MIGRATOR_DOWNLOAD_ATTEMPTS = "migrator.downloadAttempts";
+    private static final String KEY_MIGRATOR_MOD_CACHE_MAX_SIZE = "migrator.modCacheMaxSize";
+    private static final String KEY_MIGRATOR_STAGE_DOWNLOADS = "migrator.stageDownloads";
+    private static final String KEY_MIGRATOR_SYNC_COMPARE_HASHES = "migrator.syncCompareHashes";
+    private static final String KEY_MIGRATOR_SYNC_COPY_MODE = "migrator.syncCopyMode";
+    private static final String KEY_MIGRATOR_SYNC_PARALLELISM = "migrator.syncParallelism";
+    private static final String KEY_MIGRATOR_LIVE_RELOAD = "migrator.liveReload";
+    private static final String KEY_MIGRATOR_BINARY_INSTALLED_MANIFEST = "migrator.binaryInstalledManifest";
+    private static final String KEY_MIGRATOR_PLAYER_AWARE_COUNTDOWN = "migrator.playerAwareCountdown";
+    private static final String KEY_MIGRATOR_STARTUP_TIMEOUT = "migrator.startupTimeout";
+    private static final String KEY_MIGRATOR_TARGET_CONCURRENCY = "migrator.targetConcurrency";
     private static final String KEY_MINECRAFT_SET_MOTD = "minecraft.setMotd";
     private static final String KEY_MINECRAFT_EXTRA_FOLDERS = "minecraft.extraFolders";
     private static final String KEY_MINECRAFT_WORLD_NAME = "minecraft.worldName";
+    private static final String KEY_RCON_ENABLE = "rcon.enable";
+    private static final String KEY_RCON_HOST = "rcon.host";
+    private static final String KEY_RCON_PORT = "rcon.port";
+    private static final String KEY_RCON_PASSWORD = "rcon.password";
+    private static final String KEY_DAEMON_POLL_INTERVAL = "daemon.pollInterval";
+    private static final String KEY_DAEMON_HTTP_PORT = "daemon.httpPort";
+    private static final String KEY_DAEMON_TOKEN = "daemon.token";
     private static final String KEY_GIT_BRANCH_NAME = "git.branchName";
+    private static final String KEY_HTTP_CONNECT_TIMEOUT = "http.connectTimeout";
+    private static final String KEY_HTTP_READ_TIMEOUT = "http.readTimeout";
     private static final String KEY_DISCORD_ENABLE_WEBHOOK = "discord.enable";
     private static final String KEY_DISCORD_WEBHOOK_URL = "discord.webhookUrl";
     private static final String KEY_DISCORD_MENTION_ID = "discord.mentionId";
+    private static final String KEY_METRICS_REPORT_PATH = "metrics.reportPath";
+    private static final String KEY_METRICS_PROMETHEUS_TEXTFILE = "metrics.prometheusTextfile";
+    private static final String KEY_TARGETS = "targets";
+    private static final String TARGET_KEY_PREFIX = "target.";
     private static final String EXTRA_FOLDER_SEPARATOR = ",";
+    private static final String TARGET_SEPARATOR = ",";
+    private static final String DEFAULT_TARGET_NAME = "default";
+    private static final String DEFAULT_MOD_CACHE_FOLDER = ".modcache";
+    private static final String DEFAULT_METRICS_REPORT_FILE = ".modpackupdater-report.json";
 
     private final Properties mProperties;
+    private final String mTargetName;
 
     public ModpackMigratorProperties(final Properties properties) {
+        this(properties, DEFAULT_TARGET_NAME);
+    }
+
+    private ModpackMigratorProperties(final Properties properties, final String targetName) {
         mProperties = properties;
+        mTargetName = targetName;
+    }
+
+    public int getDaemonHttpPort() {
+        return Integer.parseInt(mProperties.getProperty(KEY_DAEMON_HTTP_PORT, "8765"));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the interval is not a positive number of seconds
+     */
+    public int getDaemonPollInterval() {
+        final String value = mProperties.getProperty(KEY_DAEMON_POLL_INTERVAL, "300").trim();
+        try {
+            final int pollInterval = Integer.parseInt(value);
+            if (pollInterval > 0) {
+                return pollInterval;
+            }
+        } catch (final NumberFormatException exception) {
+            // Rejected below along with intervals that are not positive
+        }
+        throw new IllegalArgumentException(
+            KEY_DAEMON_POLL_INTERVAL + " must be a positive number of seconds, not \"" + value + "\"");
+    }
+
+    public String getDaemonToken() {
+        return mProperties.getProperty(KEY_DAEMON_TOKEN, "");
     }
 
     public String getDiscordMentionId() {
@@ -45,10 +111,30 @@ public class ModpackMigratorProperties {
         return mProperties.getProperty(KEY_PATHS_DOCKER_CONTAINER);
     }
 
+    public String getDockerSocketPath() {
+        return mProperties.getProperty(KEY_DOCKER_SOCKET, "/var/run/docker.sock");
+    }
+
+    public int getDownloadAttempts() {
+        return Integer.parseInt(mProperties.getProperty(KEY_MIGRATOR_DOWNLOAD_ATTEMPTS, "3"));
+    }
+
+    public int getDownloadConcurrency() {
+        return Integer.parseInt(mProperties.getProperty(KEY_MIGRATOR_DOWNLOAD_CONCURRENCY, "4"));
+    }
+
     public String getGitBranchName() {
         return mProperties.getProperty(KEY_GIT_BRANCH_NAME, "master");
     }
 
+    public int getHttpConnectTimeout() {
+        return Integer.parseInt(mProperties.getProperty(KEY_HTTP_CONNECT_TIMEOUT, "10"));
+    }
+
+    public int getHttpReadTimeout() {
+        return Integer.parseInt(mProperties.getProperty(KEY_HTTP_READ_TIMEOUT, "30"));
+    }
+
     public Collection<String> getManagedFolders() {
         final Set<String> allFolders = new HashSet<>(MANAGED_MINECRAFT_FOLDERS);
         final String configuredPropertyValue = mProperties.getProperty(
@@ -61,10 +147,42 @@ public class ModpackMigratorProperties {
         return allFolders;
     }
 
+    public String getMetricsPrometheusTextfile() {
+        return mProperties.getProperty(KEY_METRICS_PROMETHEUS_TEXTFILE, "");
+    }
+
+    public String getMetricsReportPath() {
+        return mProperties.getProperty(
+            KEY_METRICS_REPORT_PATH,
+            Paths.get(getServerRootPath(), DEFAULT_METRICS_REPORT_FILE).toString());
+    }
+
     public String getMinecraftWorldName() {
         return mProperties.getProperty(KEY_MINECRAFT_WORLD_NAME, "world");
     }
 
+    public String getModCachePath() {
+        return mProperties.getProperty(
+            KEY_PATHS_MOD_CACHE,
+            Paths.get(getServerRootPath(), DEFAULT_MOD_CACHE_FOLDER).toString());
+    }
+
+    public long getModCacheMaxSizeBytes() {
+        return Long.parseLong(mProperties.getProperty(KEY_MIGRATOR_MOD_CACHE_MAX_SIZE, "2048")) * 1024 * 1024;
+    }
+
+    public String getRconHost() {
+        return mProperties.getProperty(KEY_RCON_HOST, "127.0.0.1");
+    }
+
+    public String getRconPassword() {
+        return mProperties.getProperty(KEY_RCON_PASSWORD, "");
+    }
+
+    public int getRconPort() {
+        return Integer.parseInt(mProperties.getProperty(KEY_RCON_PORT, "25575"));
+    }
+
     public String getServerRootPath() {
         return mProperties.getProperty(KEY_PATHS_SERVER_ROOT);
     }
@@ -77,14 +195,97 @@ public class ModpackMigratorProperties {
         return mProperties.getProperty(KEY_PATHS_SOURCE_REPOSITORY);
     }
 
+    public int getStartupTimeout() {
+        return Integer.parseInt(mProperties.getProperty(KEY_MIGRATOR_STARTUP_TIMEOUT, "300"));
+    }
+
+    public int getTargetConcurrency() {
+        return Integer.parseInt(mProperties.getProperty(KEY_MIGRATOR_TARGET_CONCURRENCY, "1"));
+    }
+
+    public String getTargetName() {
+        return mTargetName;
+    }
+
+    /**
+     * @return the properties of each configured target, in which every {@code target.<name>.<key>} entry overrides
+     *     {@code <key>}, or just these properties when no targets are configured
+     */
+    public List<ModpackMigratorProperties> getTargets() {
+        final String targetNames = mProperties.getProperty(KEY_TARGETS, "").trim();
+        if (targetNames.isEmpty()) {
+            return List.of(this);
+        }
+
+        final List<ModpackMigratorProperties> targets = new ArrayList<>();
+        for (final String configuredTargetName : targetNames.split(TARGET_SEPARATOR)) {
+            final String targetName = configuredTargetName.trim();
+            final String prefix = TARGET_KEY_PREFIX + targetName + ".";
+            final Properties targetProperties = new Properties(mProperties);
+            for (final String key : mProperties.stringPropertyNames()) {
+                if (key.startsWith(prefix)) {
+                    targetProperties.setProperty(key.substring(prefix.length()), mProperties.getProperty(key));
+                }
+            }
+            if (mProperties.getProperty(KEY_PATHS_MOD_CACHE) == null && !targets.isEmpty()) {
+                // Every target shares one mod cache, by default the first target's
+                targetProperties.setProperty(KEY_PATHS_MOD_CACHE, targets.get(0).getModCachePath());
+            }
+            final String textfile = targetProperties.getProperty(KEY_METRICS_PROMETHEUS_TEXTFILE, "");
+            if (!textfile.isEmpty() && textfile.equals(mProperties.getProperty(KEY_METRICS_PROMETHEUS_TEXTFILE))) {
+                // One file per target, since each run replaces its whole file
+                targetProperties.setProperty(
+                    KEY_METRICS_PROMETHEUS_TEXTFILE,
+                    textfile.replaceFirst("(\\.prom)?$", "-" + targetName + "$1"));
+            }
+            targets.add(new ModpackMigratorProperties(targetProperties, targetName));
+        }
+        return targets;
+    }
+
+    public DirectorySync.CopyMode getSyncCopyMode() {
+        return DirectorySync.CopyMode.valueOf(
+            mProperties.getProperty(KEY_MIGRATOR_SYNC_COPY_MODE, "copy").trim().toUpperCase(Locale.ROOT));
+    }
+
+    public int getSyncParallelism() {
+        return Integer.parseInt(mProperties.getProperty(
+            KEY_MIGRATOR_SYNC_PARALLELISM,
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+    }
+
+    public boolean isBinaryInstalledManifest() {
+        return Boolean.parseBoolean(mProperties.getProperty(KEY_MIGRATOR_BINARY_INSTALLED_MANIFEST, "false"));
+    }
+
     public boolean isDiscordWebhookEnabled() {
         return Boolean.parseBoolean(mProperties.getProperty(KEY_DISCORD_ENABLE_WEBHOOK, "false"));
     }
 
+    public boolean isLiveReload() {
+        return Boolean.parseBoolean(mProperties.getProperty(KEY_MIGRATOR_LIVE_RELOAD, "false"));
+    }
+
+    public boolean isPlayerAwareCountdown() {
+        return Boolean.parseBoolean(mProperties.getProperty(KEY_MIGRATOR_PLAYER_AWARE_COUNTDOWN, "true"));
+    }
+
+    public boolean isRconEnabled() {
+        return Boolean.parseBoolean(mProperties.getProperty(KEY_RCON_ENABLE, "false"));
+    }
+
     public boolean isSetMotd() {
         return Boolean.parseBoolean(mProperties.getProperty(KEY_MINECRAFT_SET_MOTD, "true"));
     }
 
+    public boolean isStageDownloads() {
+        return Boolean.parseBoolean(mProperties.getProperty(KEY_MIGRATOR_STAGE_DOWNLOADS, "true"));
+    }
+
+    public boolean isSyncCompareHashes() {
+        return Boolean.parseBoolean(mProperties.getProperty(KEY_MIGRATOR_SYNC_COMPARE_HASHES, "false"));
+    }
+
     private static String generateFolderString(final String... folders) {
         return Arrays.stream(folders).map(String::toString).collect(Collectors.joining(EXTRA_FOLDER_SEPARATOR));
     }
@@ -0,0 +1,16 @@
+package com.coryjreid.modpackupdater;
+
+/**
+ * Thrown when an update cannot continue. The message says what failed and what state the server was left in.
+ */
+public class ModpackUpdateException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public ModpackUpdateException(final String message) {
+        super(message);
+    }
+
+    public ModpackUpdateException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
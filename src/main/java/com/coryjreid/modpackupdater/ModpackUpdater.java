@@ -5,12 +5,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.util.Iterator;
 import java.util.Properties;
 
 import com.martiansoftware.jsap.JSAP;
 import com.martiansoftware.jsap.JSAPException;
 import com.martiansoftware.jsap.JSAPResult;
+import com.martiansoftware.jsap.Switch;
 import com.martiansoftware.jsap.UnflaggedOption;
 
 import org.slf4j.Logger;
@@ -20,6 +22,10 @@ public class ModpackUpdater {
     private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
     private static final JSAP sArgumentParser = new JSAP();
     private static final String CONFIGURATION_PATH_KEY = "configurationFilePath";
+    private static final String VERIFY_KEY = "verify";
+    private static final String PLAN_KEY = "plan";
+    private static final String FORCE_KEY = "force";
+    private static final String DAEMON_KEY = "daemon";
 
     public static void main(final String[] args) {
         try {
@@ -39,17 +45,57 @@ public class ModpackUpdater {
             System.exit(1);
         }
 
+        final ModpackMigratorProperties migratorProperties;
         try (final InputStream inputStream = Files.newInputStream(configFile.toPath())) {
             final Properties properties = new Properties();
             properties.load(inputStream);
-
-            final ModpackMigrator migrator = new ModpackMigrator(new ModpackMigratorProperties(properties));
-            migrator.doModpackUpdate();
+            migratorProperties = new ModpackMigratorProperties(properties);
         } catch (final IOException exception) {
             sLogger.error("Failed to read the config file", exception);
             System.exit(1);
+            return;
+        }
+
+        final MultiTargetMigrator migrator;
+        final Duration pollInterval;
+        try {
+            migrator = new MultiTargetMigrator(migratorProperties);
+            // Checked up front so that a bad interval stops the daemon before it starts serving
+            pollInterval = jsapResult.getBoolean(DAEMON_KEY)
+                ? Duration.ofSeconds(migratorProperties.getDaemonPollInterval())
+                : null;
+        } catch (final IllegalArgumentException exception) {
+            sLogger.error("Invalid configuration: " + exception.getMessage());
+            System.exit(1);
+            return;
         }
 
+        try {
+            if (jsapResult.getBoolean(VERIFY_KEY)) {
+                System.exit(migrator.verifyInstalledMods() ? 0 : 1);
+            }
+            if (jsapResult.getBoolean(PLAN_KEY)) {
+                migrator.printUpdatePlan();
+                return;
+            }
+            if (jsapResult.getBoolean(DAEMON_KEY)) {
+                new UpdateDaemon(
+                    migrator,
+                    pollInterval,
+                    migratorProperties.getDaemonHttpPort(),
+                    migratorProperties.getDaemonToken()).run();
+                return;
+            }
+            migrator.doModpackUpdate(jsapResult.getBoolean(FORCE_KEY));
+        } catch (final ModpackUpdateException exception) {
+            sLogger.error(exception.getMessage(), exception.getCause());
+            System.exit(1);
+        } catch (final IOException exception) {
+            sLogger.error("Failed to start the update daemon", exception);
+            System.exit(1);
+        } catch (final InterruptedException exception) {
+            sLogger.warn("The update daemon was interrupted", exception);
+        }
     }
 
     private static void validateJsapResult(final JSAPResult jsapResult) {
@@ -72,6 +118,22 @@ public class ModpackUpdater {
             .setStringParser(JSAP.STRING_PARSER)
             .setRequired(true);
 
+        final Switch verify = new Switch(VERIFY_KEY).setLongFlag(VERIFY_KEY);
+        verify.setHelp("Verify the installed mods against the installed manifest instead of updating");
+
+        final Switch plan = new Switch(PLAN_KEY).setLongFlag(PLAN_KEY);
+        plan.setHelp("Print the changes an update would make without touching the server");
+
+        final Switch force = new Switch(FORCE_KEY).setLongFlag(FORCE_KEY);
+        force.setHelp("Update and restart the server even if nothing changed since the last update");
+
+        final Switch daemon = new Switch(DAEMON_KEY).setLongFlag(DAEMON_KEY);
+        daemon.setHelp("Stay running, polling for updates and serving status and update triggers over HTTP");
+
         sArgumentParser.registerParameter(configurationPath);
+        sArgumentParser.registerParameter(verify);
+        sArgumentParser.registerParameter(plan);
+        sArgumentParser.registerParameter(force);
+        sArgumentParser.registerParameter(daemon);
     }
 }
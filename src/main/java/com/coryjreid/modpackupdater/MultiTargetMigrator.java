@@ -0,0 +1,186 @@
+package com.coryjreid.modpackupdater;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.coryjreid.modpackupdater.json.Mod;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Updates every server configured as a target from the same source repository. The repository is pulled once, each
+ * target's new mods are downloaded once into the mod cache the targets share, and the prepared updates are then applied
+ * to at most {@code migrator.targetConcurrency} servers at a time. A concurrency of one updates the servers in turn.
+ */
+public class MultiTargetMigrator {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Map<String, ModpackMigrator> mMigrators = new LinkedHashMap<>();
+    private final HttpTransport mHttpTransport;
+    private final ModCache mModCache;
+    private final int mTargetConcurrency;
+
+    public MultiTargetMigrator(final ModpackMigratorProperties properties) {
+        final List<ModpackMigratorProperties> targets = properties.getTargets();
+        mHttpTransport = ModpackMigrator.createHttpTransport(properties);
+        mModCache = ModpackMigrator.createModCache(targets.get(0));
+        mTargetConcurrency = Math.max(1, properties.getTargetConcurrency());
+
+        final Set<String> serverRoots = new HashSet<>();
+        for (final ModpackMigratorProperties target : targets) {
+            if (target.getServerRootPath() == null || !serverRoots.add(target.getServerRootPath())) {
+                throw new IllegalArgumentException(
+                    "Target \"" + target.getTargetName() + "\" needs its own paths.serverRoot");
+            }
+            mMigrators.put(target.getTargetName(), new ModpackMigrator(target, mHttpTransport, mModCache));
+        }
+    }
+
+    /**
+     * @param force update even if nothing has changed since the last successful update
+     */
+    public void doModpackUpdate(final boolean force) throws ModpackUpdateException {
+        if (mMigrators.size() == 1) {
+            getFirstMigrator().doModpackUpdate(force);
+            return;
+        }
+
+        // Every server is locked before the shared source repository is pulled
+        final List<RunLock> locks = new ArrayList<>();
+        try {
+            for (final ModpackMigrator migrator : mMigrators.values()) {
+                final RunLock lock = migrator.tryLockRun();
+                if (lock == null) {
+                    return;
+                }
+                locks.add(lock);
+            }
+            doLockedModpackUpdate(force);
+        } finally {
+            locks.forEach(RunLock::close);
+            mHttpTransport.logRequestCounts();
+        }
+    }
+
+    private void doLockedModpackUpdate(final boolean force) throws ModpackUpdateException {
+        // The targets share the source repository, so the first target's pull serves them all
+        mMigrators.values().forEach(ModpackMigrator::beginRun);
+        getFirstMigrator().doGitCheckout();
+        mMigrators.values().forEach(migrator -> migrator.setGitUpdate(getFirstMigrator().getGitUpdate()));
+
+        // Preparing one target at a time downloads each mod once; later targets find it already cached
+        final Map<String, ModpackMigrator> prepared = new LinkedHashMap<>();
+        final List<String> failedTargets = new ArrayList<>();
+        for (final Map.Entry<String, ModpackMigrator> entry : mMigrators.entrySet()) {
+            sLogger.info("Preparing target \"" + entry.getKey() + "\"");
+            try {
+                if (entry.getValue().prepareUpdate(force, true)) {
+                    prepared.put(entry.getKey(), entry.getValue());
+                }
+            } catch (final ModpackUpdateException exception) {
+                sLogger.error("[" + entry.getKey() + "] " + exception.getMessage(), exception.getCause());
+                failedTargets.add(entry.getKey());
+            }
+        }
+        if (prepared.isEmpty()) {
+            throwIfFailed(failedTargets);
+            return;
+        }
+
+        final List<Mod> retainedMods = new ArrayList<>();
+        prepared.values().forEach(migrator -> retainedMods.addAll(migrator.getModsToDownload()));
+        mModCache.retain(retainedMods);
+        sLogger.info(String.format(
+            "Updating %s of %s targets, %s at a time: %s",
+            prepared.size(),
+            mMigrators.size(),
+            mTargetConcurrency,
+            String.join(", ", prepared.keySet())));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(mTargetConcurrency, prepared.size()));
+        try {
+            final Map<String, Future<?>> updates = new LinkedHashMap<>();
+            for (final Map.Entry<String, ModpackMigrator> entry : prepared.entrySet()) {
+                updates.put(entry.getKey(), executor.submit(() -> {
+                    // Names the target in every log line of its update
+                    Thread.currentThread().setName("update-" + entry.getKey());
+                    entry.getValue().applyUpdate();
+                    return null;
+                }));
+            }
+            for (final Map.Entry<String, Future<?>> update : updates.entrySet()) {
+                try {
+                    update.getValue().get();
+                } catch (final ExecutionException exception) {
+                    final Throwable cause = exception.getCause();
+                    if (cause instanceof ModpackUpdateException) {
+                        sLogger.error("[" + update.getKey() + "] " + cause.getMessage(), cause.getCause());
+                    } else {
+                        sLogger.error("[" + update.getKey() + "] The update failed unexpectedly", cause);
+                    }
+                    failedTargets.add(update.getKey());
+                } catch (final InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new ModpackUpdateException("Interrupted while updating the targets", exception);
+                }
+            }
+        } finally {
+            executor.shutdown();
+            mModCache.release(retainedMods);
+        }
+        throwIfFailed(failedTargets);
+    }
+
+    /**
+     * @return the metrics of the current or most recent update of each target, keyed by target name
+     */
+    public Map<String, RunMetrics> getRunMetrics() {
+        final Map<String, RunMetrics> runMetrics = new LinkedHashMap<>();
+        mMigrators.forEach((name, migrator) -> runMetrics.put(name, migrator.getRunMetrics()));
+        return runMetrics;
+    }
+
+    public void printUpdatePlan() throws ModpackUpdateException {
+        for (final Map.Entry<String, ModpackMigrator> entry : mMigrators.entrySet()) {
+            if (mMigrators.size() > 1) {
+                sLogger.info("Target \"" + entry.getKey() + "\":");
+            }
+            entry.getValue().printUpdatePlan();
+        }
+    }
+
+    /**
+     * @return {@code true} if every target's installed mods are present and match their recorded hashes
+     */
+    public boolean verifyInstalledMods() throws ModpackUpdateException {
+        boolean verified = true;
+        for (final ModpackMigrator migrator : mMigrators.values()) {
+            verified &= migrator.verifyInstalledMods();
+        }
+        return verified;
+    }
+
+    private ModpackMigrator getFirstMigrator() {
+        return mMigrators.values().iterator().next();
+    }
+
+    private void throwIfFailed(final List<String> failedTargets) throws ModpackUpdateException {
+        if (!failedTargets.isEmpty()) {
+            throw new ModpackUpdateException(String.format(
+                "The update failed for %s of %s targets: %s",
+                failedTargets.size(),
+                mMigrators.size(),
+                String.join(", ", failedTargets)));
+        }
+    }
+}
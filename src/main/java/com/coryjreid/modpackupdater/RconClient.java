@@ -0,0 +1,254 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A client for the Source RCON protocol spoken by Minecraft servers. One authenticated session is kept open and reused
+ * for every command until {@link #close()} is called.
+ *
+ * <p>Minecraft reads one packet at a time and drops whatever else arrived with it, so each command is sent only once
+ * the response to the previous one has been read. A response longer than 4096 bytes is split over several packets, so
+ * a packet with a full body may be followed by more. In that case a packet of a type the server does not handle is
+ * sent next; the server answers it after the rest of the response, which marks where the response ends.
+ */
+public class RconClient implements AutoCloseable {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final int TYPE_RESPONSE_VALUE = 0;
+    private static final int TYPE_COMMAND = 2;
+    private static final int TYPE_AUTH_RESPONSE = 2;
+    private static final int TYPE_AUTH = 3;
+
+    /**
+     * The request ID of an authentication response that rejected the password.
+     */
+    private static final int AUTH_FAILED_ID = -1;
+
+    /**
+     * The ID, type and the two terminating null bytes of a packet.
+     */
+    private static final int PACKET_OVERHEAD = 10;
+    private static final int MAX_RESPONSE_BODY_BYTES = 4096;
+    private static final int MAX_PACKET_LENGTH = MAX_RESPONSE_BODY_BYTES + PACKET_OVERHEAD;
+
+    /**
+     * Minecraft drops commands longer than this many bytes.
+     */
+    private static final int MAX_COMMAND_BYTES = 1446;
+
+    private final String mHost;
+    private final int mPort;
+    private final String mPassword;
+    private final Duration mTimeout;
+    private Socket mSocket;
+    private DataInputStream mInputStream;
+    private OutputStream mOutputStream;
+    private int mNextRequestId = 1;
+
+    /**
+     * @param timeout how long to wait to connect and for each response
+     */
+    public RconClient(final String host, final int port, final String password, final Duration timeout) {
+        mHost = host;
+        mPort = port;
+        mPassword = password;
+        mTimeout = timeout;
+    }
+
+    /**
+     * @return the server's response to {@code command}
+     */
+    public synchronized String execute(final String command) throws IOException {
+        return executeAll(List.of(command)).get(0);
+    }
+
+    /**
+     * Runs the commands one after another over the session.
+     *
+     * @return the server's response to each command, in order
+     */
+    public synchronized List<String> executeAll(final List<String> commands) throws IOException {
+        return executeAll(commands, mTimeout);
+    }
+
+    /**
+     * Runs the commands one after another over the session, waiting up to {@code responseTimeout} for each response.
+     *
+     * @return the server's response to each command, in order
+     */
+    public synchronized List<String> executeAll(final List<String> commands, final Duration responseTimeout)
+        throws IOException {
+
+        if (commands.isEmpty()) {
+            return List.of();
+        }
+        final List<byte[]> encodedCommands = new ArrayList<>(commands.size());
+        for (final String command : commands) {
+            final byte[] encodedCommand = command.getBytes(StandardCharsets.UTF_8);
+            if (encodedCommand.length > MAX_COMMAND_BYTES) {
+                throw new IllegalArgumentException("The RCON command is longer than " + MAX_COMMAND_BYTES + " bytes");
+            }
+            encodedCommands.add(encodedCommand);
+        }
+
+        final List<String> responses = new ArrayList<>(commands.size());
+        final boolean reusingSession = mSocket != null;
+        try {
+            responses.add(send(encodedCommands.get(0), responseTimeout));
+        } catch (final IOException exception) {
+            close();
+            if (!reusingSession) {
+                throw exception;
+            }
+            // The server may have closed an idle session, so try once more on a new one
+            sLogger.debug("The RCON session was lost; Reconnecting", exception);
+            try {
+                responses.add(send(encodedCommands.get(0), responseTimeout));
+            } catch (final IOException retryException) {
+                close();
+                throw retryException;
+            }
+        }
+        try {
+            // A later command is not retried, since the server may have run it before the session was lost
+            for (final byte[] command : encodedCommands.subList(1, encodedCommands.size())) {
+                responses.add(send(command, responseTimeout));
+            }
+        } catch (final IOException exception) {
+            close();
+            throw exception;
+        }
+        return responses;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mSocket != null) {
+            try {
+                mSocket.close();
+            } catch (final IOException exception) {
+                sLogger.debug("Failed to close the RCON session", exception);
+            }
+        }
+        mSocket = null;
+        mInputStream = null;
+        mOutputStream = null;
+    }
+
+    private String send(final byte[] command, final Duration responseTimeout) throws IOException {
+        if (mSocket == null) {
+            connect();
+        }
+        mSocket.setSoTimeout((int) responseTimeout.toMillis());
+
+        final int commandId = mNextRequestId++;
+        writePacket(commandId, TYPE_COMMAND, command);
+        mOutputStream.flush();
+        Packet packet;
+        do {
+            // Skip anything that answers another request
+            packet = readPacket();
+        } while (packet.mRequestId != commandId);
+        if (packet.mBody.length < MAX_RESPONSE_BODY_BYTES) {
+            return new String(packet.mBody, StandardCharsets.UTF_8);
+        }
+
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        response.write(packet.mBody);
+        final int markerId = mNextRequestId++;
+        writePacket(markerId, TYPE_RESPONSE_VALUE, new byte[0]);
+        mOutputStream.flush();
+        for (packet = readPacket(); packet.mRequestId != markerId; packet = readPacket()) {
+            if (packet.mRequestId == commandId) {
+                response.write(packet.mBody);
+            }
+        }
+        // Decoded only once joined, since a packet boundary can split a multi-byte character
+        return response.toString(StandardCharsets.UTF_8);
+    }
+
+    private void connect() throws IOException {
+        final Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(mHost, mPort), (int) mTimeout.toMillis());
+            socket.setSoTimeout((int) mTimeout.toMillis());
+            socket.setTcpNoDelay(true);
+            mSocket = socket;
+            mInputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            mOutputStream = new BufferedOutputStream(socket.getOutputStream());
+
+            final int authId = mNextRequestId++;
+            writePacket(authId, TYPE_AUTH, mPassword.getBytes(StandardCharsets.UTF_8));
+            mOutputStream.flush();
+            Packet packet;
+            do {
+                // Some servers send an empty response value ahead of the authentication response
+                packet = readPacket();
+            } while (packet.mType != TYPE_AUTH_RESPONSE);
+            if (packet.mRequestId == AUTH_FAILED_ID) {
+                throw new IOException("The RCON password for " + mHost + ":" + mPort + " was rejected");
+            }
+            if (packet.mRequestId != authId) {
+                throw new IOException("Unexpected RCON authentication response from " + mHost + ":" + mPort);
+            }
+            sLogger.debug("Opened an RCON session to " + mHost + ":" + mPort);
+        } catch (final IOException exception) {
+            close();
+            socket.close();
+            throw exception;
+        }
+    }
+
+    private void writePacket(final int requestId, final int type, final byte[] body) throws IOException {
+        final ByteBuffer packet = ByteBuffer.allocate(4 + PACKET_OVERHEAD + body.length).order(ByteOrder.LITTLE_ENDIAN);
+        packet.putInt(PACKET_OVERHEAD + body.length)
+            .putInt(requestId)
+            .putInt(type)
+            .put(body)
+            .put((byte) 0)
+            .put((byte) 0);
+        mOutputStream.write(packet.array());
+    }
+
+    private Packet readPacket() throws IOException {
+        final int length = Integer.reverseBytes(mInputStream.readInt());
+        if (length < PACKET_OVERHEAD || length > MAX_PACKET_LENGTH) {
+            throw new IOException("Received an invalid RCON packet length of " + length);
+        }
+        final int requestId = Integer.reverseBytes(mInputStream.readInt());
+        final int type = Integer.reverseBytes(mInputStream.readInt());
+        final byte[] bodyAndTerminator = new byte[length - 8];
+        mInputStream.readFully(bodyAndTerminator);
+        return new Packet(requestId, type, Arrays.copyOf(bodyAndTerminator, bodyAndTerminator.length - 2));
+    }
+
+    private static final class Packet {
+        private final int mRequestId;
+        private final int mType;
+        private final byte[] mBody;
+
+        Packet(final int requestId, final int type, final byte[] body) {
+            mRequestId = requestId;
+            mType = type;
+            mBody = body;
+        }
+    }
+}
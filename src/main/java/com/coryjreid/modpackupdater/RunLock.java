@@ -0,0 +1,58 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An exclusive lock on a file that keeps two updates of the same server from running at once, whether they are in
+ * different processes or the same one. The lock is released when it is closed or the process exits; the file itself is
+ * left in place.
+ */
+public class RunLock implements AutoCloseable {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Path mFile;
+    private final FileChannel mChannel;
+
+    private RunLock(final Path file, final FileChannel channel) {
+        mFile = file;
+        mChannel = channel;
+    }
+
+    /**
+     * @return the lock, or {@code null} if another update already holds it
+     */
+    public static RunLock tryAcquire(final Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            final FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return new RunLock(file, channel);
+            }
+        } catch (final OverlappingFileLockException exception) {
+            // Held by another update in this process
+        } catch (final IOException exception) {
+            channel.close();
+            throw exception;
+        }
+        channel.close();
+        return null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            mChannel.close();
+        } catch (final IOException exception) {
+            sLogger.warn("Failed to release the lock on \"" + mFile + "\"", exception);
+        }
+    }
+}
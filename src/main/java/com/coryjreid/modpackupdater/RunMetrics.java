@@ -0,0 +1,384 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+import com.coryjreid.modpackupdater.json.Json;
+import com.coryjreid.modpackupdater.json.Mod;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Timings and volumes recorded during one run of the migrator: the duration, file count and byte count of each phase,
+ * the latency of each mod download, and how long the server was down. They are written as a JSON report and as a
+ * Prometheus textfile for the node exporter's textfile collector.
+ */
+@JsonPropertyOrder({
+    "target",
+    "startedAt",
+    "outcome",
+    "durationMillis",
+    "downtimeMillis",
+    "downloadBytesPerSecond",
+    "copyBytesPerSecond",
+    "phases",
+    "downloads"})
+public class RunMetrics {
+    private static final String METRIC_PREFIX = "modpackupdater_";
+    private static final String LAST_CHECK_METRIC = "last_check_timestamp_seconds";
+    private static final String LAST_CHECK_HELP = "When the source repository was last checked for an update";
+
+    private final String mTarget;
+    private final Instant mStartedAt = Instant.now();
+    private final long mStartedNanos = System.nanoTime();
+    private final List<PhaseMetrics> mPhases = Collections.synchronizedList(new ArrayList<>());
+    private final List<DownloadMetrics> mDownloads = Collections.synchronizedList(new ArrayList<>());
+    private volatile String mOutcome = "failed";
+    private volatile long mServerStoppedNanos;
+    private volatile Long mDowntimeMillis;
+    private volatile long mFinishedNanos;
+
+    /**
+     * @param target the name of the server being updated, which labels every Prometheus sample
+     */
+    public RunMetrics(final String target) {
+        mTarget = target;
+    }
+
+    /**
+     * Starts timing a phase, which ends when the returned phase is closed.
+     */
+    public Phase startPhase(final String name) {
+        return new Phase(name);
+    }
+
+    /**
+     * Times {@code action} as a phase that has no files or bytes to count.
+     */
+    public <E extends Exception> void time(final String name, final PhaseAction<E> action) throws E {
+        final Phase phase = startPhase(name);
+        try {
+            action.run();
+        } finally {
+            phase.close();
+        }
+    }
+
+    public void recordDownload(final Mod mod, final Duration elapsed) {
+        mDownloads.add(new DownloadMetrics(mod.getFileName(), mod.getFileLength(), elapsed.toMillis()));
+    }
+
+    public void markServerStopped() {
+        mServerStoppedNanos = System.nanoTime();
+    }
+
+    /**
+     * Ends the downtime that began at {@link #markServerStopped()}.
+     */
+    public void markServerAvailable() {
+        if (mServerStoppedNanos != 0) {
+            mDowntimeMillis = Duration.ofNanos(System.nanoTime() - mServerStoppedNanos).toMillis();
+        }
+    }
+
+    /**
+     * @param outcome how the run ended, such as {@code restarted}, {@code live} or {@code skipped}, or
+     *     {@code not_ready} when the server was restarted but had not finished starting by the timeout
+     */
+    public void finish(final String outcome) {
+        mOutcome = outcome;
+        mFinishedNanos = System.nanoTime();
+    }
+
+    public String getTarget() {
+        return mTarget;
+    }
+
+    public String getStartedAt() {
+        return mStartedAt.toString();
+    }
+
+    public String getOutcome() {
+        return mOutcome;
+    }
+
+    public long getDurationMillis() {
+        return Duration.ofNanos((mFinishedNanos == 0 ? System.nanoTime() : mFinishedNanos) - mStartedNanos).toMillis();
+    }
+
+    /**
+     * @return milliseconds from stopping the server until it was available again, or {@code null} if it was not stopped
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long getDowntimeMillis() {
+        return mDowntimeMillis;
+    }
+
+    public List<PhaseMetrics> getPhases() {
+        synchronized (mPhases) {
+            return new ArrayList<>(mPhases);
+        }
+    }
+
+    public List<DownloadMetrics> getDownloads() {
+        synchronized (mDownloads) {
+            return new ArrayList<>(mDownloads);
+        }
+    }
+
+    /**
+     * @return bytes downloaded per second of wall time spent in download phases, or {@code 0} if nothing was downloaded
+     */
+    public long getDownloadBytesPerSecond() {
+        return getBytesPerSecond(PhaseMetrics::isDownload);
+    }
+
+    /**
+     * @return bytes copied per second of wall time spent in sync phases, or {@code 0} if nothing was copied
+     */
+    public long getCopyBytesPerSecond() {
+        return getBytesPerSecond(PhaseMetrics::isSync);
+    }
+
+    public void writeReport(final Path file) throws IOException {
+        final Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Json.PRETTY_WRITER.writeValue(temporaryFile.toFile(), this);
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format. The file is renamed into place so the collector
+     * never reads a partial file.
+     */
+    public void writePrometheusTextfile(final Path file) throws IOException {
+        final Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            writeGauge(writer, LAST_CHECK_METRIC, LAST_CHECK_HELP, mStartedAt.getEpochSecond());
+            writeGauge(writer, "last_run_timestamp_seconds", "When the last run started", mStartedAt.getEpochSecond());
+            writeGauge(writer, "last_run_duration_seconds", "Duration of the last run", getDurationMillis() / 1000.0);
+            writeGauge(
+                writer,
+                "last_run_success",
+                "Whether the last run succeeded with the server ready",
+                "failed".equals(mOutcome) || "not_ready".equals(mOutcome) ? 0 : 1);
+            writeGauge(
+                writer,
+                "last_run_restarted",
+                "Whether the last run restarted the server",
+                "restarted".equals(mOutcome) || "not_ready".equals(mOutcome) ? 1 : 0);
+            if (mDowntimeMillis != null) {
+                writeGauge(
+                    writer,
+                    "downtime_seconds",
+                    "Time the server was unavailable during the last run",
+                    mDowntimeMillis / 1000.0);
+            }
+
+            final List<PhaseMetrics> phases = getPhases();
+            writeHeader(writer, "phase_duration_seconds", "Duration of each phase of the last run");
+            for (final PhaseMetrics phase : phases) {
+                writeSample(writer, "phase_duration_seconds", phase.getName(), phase.getDurationMillis() / 1000.0);
+            }
+            writeHeader(writer, "phase_files", "Files processed by each phase of the last run");
+            for (final PhaseMetrics phase : phases) {
+                writeSample(writer, "phase_files", phase.getName(), phase.getFiles());
+            }
+            writeHeader(writer, "phase_bytes", "Bytes processed by each phase of the last run");
+            for (final PhaseMetrics phase : phases) {
+                writeSample(writer, "phase_bytes", phase.getName(), phase.getBytes());
+            }
+
+            final List<DownloadMetrics> downloads = getDownloads();
+            writeGauge(writer, "downloads", "Mod files downloaded by the last run", downloads.size());
+            writeGauge(
+                writer,
+                "download_bytes_per_second",
+                "Download throughput of the last run",
+                getDownloadBytesPerSecond());
+            writeGauge(
+                writer,
+                "download_latency_max_seconds",
+                "Slowest mod download of the last run",
+                downloads.stream().mapToLong(DownloadMetrics::getDurationMillis).max().orElse(0) / 1000.0);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Updates only the last check time in a Prometheus textfile, keeping the metrics written by the last run that
+     * deployed anything.
+     */
+    public void writePrometheusLastCheck(final Path file) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        if (Files.exists(file)) {
+            final String metric = METRIC_PREFIX + LAST_CHECK_METRIC;
+            for (final String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (!line.startsWith(metric + "{")
+                    && !line.startsWith("# HELP " + metric + " ")
+                    && !line.startsWith("# TYPE " + metric + " ")) {
+                    lines.add(line);
+                }
+            }
+        }
+
+        final Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            writeGauge(writer, LAST_CHECK_METRIC, LAST_CHECK_HELP, mStartedAt.getEpochSecond());
+            for (final String line : lines) {
+                writer.write(line + "\n");
+            }
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private long getBytesPerSecond(final Predicate<PhaseMetrics> filter) {
+        long bytes = 0;
+        long millis = 0;
+        for (final PhaseMetrics phase : getPhases()) {
+            if (filter.test(phase)) {
+                bytes += phase.getBytes();
+                millis += phase.getDurationMillis();
+            }
+        }
+        return bytes == 0 ? 0 : bytes * 1000 / Math.max(1, millis);
+    }
+
+    private void writeGauge(final Writer writer, final String name, final String help, final double value)
+        throws IOException {
+
+        writeHeader(writer, name, help);
+        writeSample(writer, name, null, value);
+    }
+
+    private static void writeHeader(final Writer writer, final String name, final String help) throws IOException {
+        writer.write("# HELP " + METRIC_PREFIX + name + " " + help + "\n");
+        writer.write("# TYPE " + METRIC_PREFIX + name + " gauge\n");
+    }
+
+    private void writeSample(final Writer writer, final String name, final String phase, final double value)
+        throws IOException {
+
+        final String labels = "{target=\"" + mTarget + "\"" + (phase == null ? "" : ",phase=\"" + phase + "\"") + "}";
+        final String formattedValue = value == Math.rint(value)
+            ? String.valueOf((long) value)
+            : String.format(Locale.ROOT, "%.3f", value);
+        writer.write(METRIC_PREFIX + name + labels + " " + formattedValue + "\n");
+    }
+
+    /**
+     * The work of a phase timed by {@link #time(String, PhaseAction)}.
+     */
+    @FunctionalInterface
+    public interface PhaseAction<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * A phase being timed. Closing it records its duration along with the files and bytes added to it.
+     */
+    public final class Phase implements AutoCloseable {
+        private final String mName;
+        private final long mStartNanos = System.nanoTime();
+        private long mFiles;
+        private long mBytes;
+
+        private Phase(final String name) {
+            mName = name;
+        }
+
+        public void addFiles(final long files) {
+            mFiles += files;
+        }
+
+        public void addBytes(final long bytes) {
+            mBytes += bytes;
+        }
+
+        @Override
+        public void close() {
+            mPhases.add(new PhaseMetrics(
+                mName,
+                Duration.ofNanos(System.nanoTime() - mStartNanos).toMillis(),
+                mFiles,
+                mBytes));
+        }
+    }
+
+    @JsonPropertyOrder({"name", "durationMillis", "files", "bytes"})
+    public static final class PhaseMetrics {
+        private static final String DOWNLOAD_PHASE_PREFIX = "download";
+        private static final String SYNC_PHASE_PREFIX = "sync";
+
+        private final String mName;
+        private final long mDurationMillis;
+        private final long mFiles;
+        private final long mBytes;
+
+        PhaseMetrics(final String name, final long durationMillis, final long files, final long bytes) {
+            mName = name;
+            mDurationMillis = durationMillis;
+            mFiles = files;
+            mBytes = bytes;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getDurationMillis() {
+            return mDurationMillis;
+        }
+
+        public long getFiles() {
+            return mFiles;
+        }
+
+        public long getBytes() {
+            return mBytes;
+        }
+
+        boolean isDownload() {
+            return mName.startsWith(DOWNLOAD_PHASE_PREFIX);
+        }
+
+        boolean isSync() {
+            return mName.startsWith(SYNC_PHASE_PREFIX);
+        }
+    }
+
+    @JsonPropertyOrder({"fileName", "bytes", "durationMillis"})
+    public static final class DownloadMetrics {
+        private final String mFileName;
+        private final long mBytes;
+        private final long mDurationMillis;
+
+        DownloadMetrics(final String fileName, final long bytes, final long durationMillis) {
+            mFileName = fileName;
+            mBytes = bytes;
+            mDurationMillis = durationMillis;
+        }
+
+        public String getFileName() {
+            return mFileName;
+        }
+
+        public long getBytes() {
+            return mBytes;
+        }
+
+        public long getDurationMillis() {
+            return mDurationMillis;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.coryjreid.modpackupdater;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import net.jcip.annotations.Immutable;
+
+/**
+ * The set of changes needed to make a target directory tree match a source tree. Paths are relative to the roots.
+ */
+@Immutable
+public class SyncPlan {
+    private final Path mSource;
+    private final Path mTarget;
+    private final List<Path> mCopies;
+    private final List<Path> mDeletions;
+    private final List<Path> mTimestampUpdates;
+    private final long mCopyBytes;
+    private final int mUnchangedCount;
+
+    public SyncPlan(
+        final Path source,
+        final Path target,
+        final List<Path> copies,
+        final List<Path> deletions,
+        final List<Path> timestampUpdates,
+        final long copyBytes,
+        final int unchangedCount) {
+
+        mSource = source;
+        mTarget = target;
+        mCopies = Collections.unmodifiableList(copies);
+        mDeletions = Collections.unmodifiableList(deletions);
+        mTimestampUpdates = Collections.unmodifiableList(timestampUpdates);
+        mCopyBytes = copyBytes;
+        mUnchangedCount = unchangedCount;
+    }
+
+    public Path getSource() {
+        return mSource;
+    }
+
+    public Path getTarget() {
+        return mTarget;
+    }
+
+    public List<Path> getCopies() {
+        return mCopies;
+    }
+
+    public List<Path> getDeletions() {
+        return mDeletions;
+    }
+
+    /**
+     * @return files with identical contents whose target modification time only needs to match the source
+     */
+    public List<Path> getTimestampUpdates() {
+        return mTimestampUpdates;
+    }
+
+    public long getCopyBytes() {
+        return mCopyBytes;
+    }
+
+    public int getUnchangedCount() {
+        return mUnchangedCount;
+    }
+
+    public boolean isEmpty() {
+        return mCopies.isEmpty() && mDeletions.isEmpty();
+    }
+}
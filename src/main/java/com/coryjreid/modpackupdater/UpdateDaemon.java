@@ -0,0 +1,248 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.coryjreid.modpackupdater.json.Json;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the migrators resident and runs an update whenever the polled branch has moved, so the JVM, the HTTP
+ * connections and the mod cache stay warm between updates. An update that finds nothing changed costs a fetch.
+ *
+ * <p>A loopback HTTP endpoint reports the daemon's status at {@code GET /status} and queues an immediate update at
+ * {@code POST /update}, or {@code POST /update?force=true} to update even if nothing changed. Every request must carry
+ * the shared token as a bearer token. Updates run one at a time; triggers that arrive while one is queued are folded
+ * into it.
+ */
+public class UpdateDaemon {
+    private static final Logger sLogger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final Duration SHUTDOWN_GRACE_PERIOD = Duration.ofMinutes(5);
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final MultiTargetMigrator mMigrator;
+    private final Duration mPollInterval;
+    private final int mHttpPort;
+    private final byte[] mToken;
+    private final ScheduledExecutorService mExecutor =
+        Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "update-daemon"));
+    private final AtomicBoolean mUpdateQueued = new AtomicBoolean();
+    private final AtomicBoolean mForceQueued = new AtomicBoolean();
+    private final CountDownLatch mStopped = new CountDownLatch(1);
+    private final Instant mStartedAt = Instant.now();
+
+    private volatile boolean mUpdating;
+    private volatile int mRuns;
+    private volatile Instant mLastRunFinishedAt;
+    private volatile String mLastError;
+    private HttpServer mHttpServer;
+
+    /**
+     * @param httpPort the loopback port of the status endpoint, or {@code 0} to disable it
+     * @param token the bearer token requests to the endpoint must carry, which disables the endpoint when empty
+     */
+    public UpdateDaemon(
+        final MultiTargetMigrator migrator,
+        final Duration pollInterval,
+        final int httpPort,
+        final String token) {
+
+        mMigrator = migrator;
+        mPollInterval = pollInterval;
+        mHttpPort = httpPort;
+        mToken = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts polling and serving the endpoint, then blocks until the JVM is asked to shut down. An update in progress
+     * is allowed to finish before the daemon exits.
+     */
+    public void run() throws IOException, InterruptedException {
+        if (mHttpPort > 0 && mToken.length == 0) {
+            sLogger.warn("Not serving status and update triggers, since daemon.token is not set");
+        } else if (mHttpPort > 0) {
+            // Bound to loopback only, so the token is never sent over the network in the clear
+            mHttpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), mHttpPort), 0);
+            mHttpServer.createContext("/status", authenticated(this::handleStatus));
+            mHttpServer.createContext("/update", authenticated(this::handleUpdate));
+            mHttpServer.start();
+            sLogger.info("Serving status and update triggers on " + mHttpServer.getAddress());
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "update-daemon-shutdown"));
+        mExecutor.scheduleWithFixedDelay(
+            () -> queueUpdate(false),
+            0,
+            mPollInterval.toSeconds(),
+            TimeUnit.SECONDS);
+        sLogger.info("Polling for updates every " + mPollInterval.toSeconds() + " seconds");
+        mStopped.await();
+    }
+
+    /**
+     * Queues an update unless one is already waiting to run.
+     *
+     * @param force update even if nothing has changed since the last successful update
+     * @return whether a new update was queued rather than folded into a waiting one
+     */
+    public boolean queueUpdate(final boolean force) {
+        if (force) {
+            mForceQueued.set(true);
+        }
+        if (!mUpdateQueued.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            mExecutor.execute(this::runUpdate);
+        } catch (final RuntimeException exception) {
+            // The executor has been shut down
+            mUpdateQueued.set(false);
+            return false;
+        }
+        return true;
+    }
+
+    private void runUpdate() {
+        mUpdateQueued.set(false);
+        mUpdating = true;
+        try {
+            mMigrator.doModpackUpdate(mForceQueued.getAndSet(false));
+            mLastError = null;
+        } catch (final ModpackUpdateException exception) {
+            mLastError = exception.getMessage();
+            sLogger.error(exception.getMessage(), exception.getCause());
+        } catch (final RuntimeException exception) {
+            // Keep polling; the next change gets another attempt
+            mLastError = exception.toString();
+            sLogger.error("The update failed unexpectedly", exception);
+        } finally {
+            mUpdating = false;
+            mRuns++;
+            mLastRunFinishedAt = Instant.now();
+        }
+    }
+
+    private void stop() {
+        sLogger.info("Stopping the update daemon");
+        if (mHttpServer != null) {
+            mHttpServer.stop(0);
+        }
+        mExecutor.shutdown();
+        try {
+            if (!mExecutor.awaitTermination(SHUTDOWN_GRACE_PERIOD.toSeconds(), TimeUnit.SECONDS)) {
+                sLogger.warn("The running update did not finish within " + SHUTDOWN_GRACE_PERIOD);
+            }
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        mStopped.countDown();
+    }
+
+    /**
+     * Wraps {@code handler} so that requests without the daemon's token are rejected before reaching it.
+     */
+    private HttpHandler authenticated(final HttpHandler handler) {
+        return exchange -> {
+            final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            final byte[] token = authorization != null && authorization.startsWith(BEARER_PREFIX)
+                ? authorization.substring(BEARER_PREFIX.length()).getBytes(StandardCharsets.UTF_8)
+                : new byte[0];
+            // Compared in constant time so the response time does not reveal how much of the token matched
+            if (!MessageDigest.isEqual(mToken, token)) {
+                sLogger.warn("Rejected an unauthenticated request from " + exchange.getRemoteAddress());
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                sendResponse(exchange, 401, Map.of("error", "Send the daemon token as a bearer token"));
+                return;
+            }
+            handler.handle(exchange);
+        };
+    }
+
+    private void handleStatus(final HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, Map.of("error", "Use GET"));
+            return;
+        }
+
+        final Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", mUpdating ? "updating" : mUpdateQueued.get() ? "queued" : "idle");
+        status.put("startedAt", mStartedAt.toString());
+        status.put("pollIntervalSeconds", mPollInterval.toSeconds());
+        status.put("runs", mRuns);
+        if (mLastRunFinishedAt != null) {
+            status.put("lastRunFinishedAt", mLastRunFinishedAt.toString());
+            status.put("latestRuns", mMigrator.getRunMetrics());
+        }
+        if (mLastError != null) {
+            status.put("lastError", mLastError);
+        }
+        sendResponse(exchange, 200, status);
+    }
+
+    private void handleUpdate(final HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, Map.of("error", "Use POST"));
+            return;
+        }
+
+        final String force = parseQuery(exchange.getRequestURI().getRawQuery()).getOrDefault("force", "false");
+        if (!force.equals("true") && !force.equals("false")) {
+            sendResponse(exchange, 400, Map.of("error", "force must be true or false"));
+            return;
+        }
+        final boolean queued = queueUpdate(Boolean.parseBoolean(force));
+        sLogger.info("An update was requested over HTTP" + (force.equals("true") ? " with force" : ""));
+        sendResponse(exchange, 202, Map.of("queued", queued));
+    }
+
+    /**
+     * @return the decoded parameters of a raw query string, keeping the last value of a repeated parameter
+     */
+    private static Map<String, String> parseQuery(final String rawQuery) {
+        final Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (final String parameter : rawQuery.split("&")) {
+            final int separator = parameter.indexOf('=');
+            final String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            final String value = separator < 0 ? "" : parameter.substring(separator + 1);
+            parameters.put(
+                URLDecoder.decode(name, StandardCharsets.UTF_8),
+                URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static void sendResponse(final HttpExchange exchange, final int status, final Object body)
+        throws IOException {
+
+        final byte[] bytes = Json.PRETTY_WRITER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (final OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
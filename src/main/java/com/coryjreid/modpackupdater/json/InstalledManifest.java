@@ -8,9 +8,6 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 
@@ -34,14 +31,11 @@ public class InstalledManifest {
     }
 
     public static void writeToFile(final File file, final InstalledManifest manifest) throws IOException {
-        final ObjectMapper mapper = new ObjectMapper();
-        final ObjectWriter writer = mapper.writer(new DefaultPrettyPrinter());
-        writer.writeValue(file, manifest);
+        Json.PRETTY_WRITER.writeValue(file, manifest);
     }
 
     public static InstalledManifest deserializeFromFile(final File file) throws IOException {
-        final ObjectMapper mapper = new ObjectMapper();
-        return mapper.readValue(file, InstalledManifest.class);
+        return Json.MAPPER.readValue(file, InstalledManifest.class);
     }
 
     @JsonPOJOBuilder(withPrefix = "set")
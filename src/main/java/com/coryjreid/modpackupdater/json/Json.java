@@ -0,0 +1,17 @@
+package com.coryjreid.modpackupdater.json;
+
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+/**
+ * The JSON mapper shared by every read and write of a run. Mappers are thread safe and expensive to build, and this one
+ * also caches the deserializers for the builder-based models, which Blackbird generates in place of reflection.
+ */
+public final class Json {
+    public static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new BlackbirdModule());
+    public static final ObjectWriter PRETTY_WRITER = MAPPER.writer(new DefaultPrettyPrinter());
+
+    private Json() {}
+}
@@ -2,6 +2,7 @@ package com.coryjreid.modpackupdater.json;
 
 import java.util.Objects;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
@@ -17,6 +18,7 @@ public class Mod {
     private final String mModDownloadUrl;
     private final int mModFileLength;
     private final int mModFileId;
+    private final String mModFileHash;
 
     private Mod(
         final int modProjectId,
@@ -24,13 +26,15 @@ public class Mod {
         final String modFileName,
         final String modDownloadUrl,
         final int modFileLength,
-        final int modFileId) {
+        final int modFileId,
+        final String modFileHash) {
         mModProjectId = modProjectId;
         mModDisplayName = modDisplayName;
         mModFileName = modFileName;
         mModDownloadUrl = modDownloadUrl;
         mModFileLength = modFileLength;
         mModFileId = modFileId;
+        mModFileHash = modFileHash;
     }
 
     public int getModId() {
@@ -57,6 +61,29 @@ public class Mod {
         return mModFileId;
     }
 
+    /**
+     * @return the hex encoded SHA-1 hash of the mod file, or {@code null} if it is not known
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getSha1() {
+        return mModFileHash;
+    }
+
+    public Builder toBuilder() {
+        return builder()
+            .setModProjectId(mModProjectId)
+            .setModDisplayName(mModDisplayName)
+            .setModFileName(mModFileName)
+            .setModDownloadUrl(mModDownloadUrl)
+            .setModFileLength(mModFileLength)
+            .setModFileId(mModFileId)
+            .setModFileHash(mModFileHash);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (this == o) {
@@ -66,6 +93,7 @@ public class Mod {
             return false;
         }
         final Mod mod = (Mod) o;
+        // The file hash is derived from the file itself and is deliberately not part of a mod's identity
         return mModProjectId == mod.mModProjectId
             && mModFileLength == mod.mModFileLength
             && mModFileId == mod.mModFileId
@@ -80,13 +108,14 @@ public class Mod {
     }
 
     @JsonPOJOBuilder
-    static final class Builder {
+    public static final class Builder {
         private int mModProjectId;
         private String mModDisplayName;
         private String mModFileName;
         private String mModDownloadUrl;
         private int mModFileLength;
         private int mModFileId;
+        private String mModFileHash;
 
         @JsonProperty("modId")
         public Builder setModProjectId(final int modProjectId) {
@@ -124,6 +153,12 @@ public class Mod {
             return this;
         }
 
+        @JsonProperty("sha1")
+        public Builder setModFileHash(final String modFileHash) {
+            mModFileHash = modFileHash;
+            return this;
+        }
+
         public Mod build() {
             return new Mod(
                 mModProjectId,
@@ -131,7 +166,8 @@ public class Mod {
                 mModFileName,
                 mModDownloadUrl,
                 mModFileLength,
-                mModFileId);
+                mModFileId,
+                mModFileHash);
         }
     }
 }
@@ -6,7 +6,9 @@ import java.util.Collection;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.annotation.JsonSetter;
+import com.fasterxml.jackson.annotation.Nulls;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 
@@ -15,6 +17,8 @@ import checkers.igj.quals.Immutable;
 @Immutable
 @JsonDeserialize(builder = ModpackManifest.Builder.class)
 public class ModpackManifest {
+    private static final ObjectReader READER = Json.MAPPER.readerFor(ModpackManifest.class);
+
     private final Minecraft mMinecraft;
     private final String mManifestType;
     private final int mManifestVersion;
@@ -76,9 +80,12 @@ public class ModpackManifest {
         return mMods;
     }
 
+    /**
+     * Binds the manifest through the annotated {@link Builder}, whose deserializer Blackbird generates. An entry of the
+     * {@code files} array that is not a mod fails the read rather than being dropped.
+     */
     public static ModpackManifest deserializeFromFile(final File file) throws IOException {
-        final ObjectMapper mapper = new ObjectMapper();
-        return mapper.readValue(file, ModpackManifest.class);
+        return READER.readValue(file);
     }
 
     @JsonPOJOBuilder(withPrefix = "set")
@@ -133,6 +140,7 @@ public class ModpackManifest {
         }
 
         @JsonProperty("files")
+        @JsonSetter(contentNulls = Nulls.FAIL)
         public Builder setModpackFiles(final Collection<Mod> modpackFiles) {
             mMods = modpackFiles;
             return this;
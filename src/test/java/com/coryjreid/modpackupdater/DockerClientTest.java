@@ -0,0 +1,249 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DockerClientTest {
+    private static final String INSPECT_BODY = "{\"Id\":\"abc\",\"State\":{\"Running\":true}}";
+
+    private StubDaemon mDaemon;
+    private DockerClient mDockerClient;
+
+    @Before
+    public void setUp() throws IOException {
+        mDaemon = new StubDaemon();
+        mDockerClient = new DockerClient(
+            Paths.get("docker.sock"),
+            () -> SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), mDaemon.getPort())));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mDockerClient.close();
+        mDaemon.close();
+    }
+
+    @Test
+    public void readIsRetriedOnNewConnection() {
+        mDaemon.reply(Reply.DROP);
+        mDaemon.reply(Reply.ok(INSPECT_BODY));
+
+        final JsonNode details = mDockerClient.inspect("minecraft");
+
+        assertNotNull(details);
+        assertEquals("abc", details.path("Id").asText());
+        assertEquals(
+            List.of("GET /containers/minecraft/json", "GET /containers/minecraft/json"),
+            mDaemon.getRequests());
+        assertEquals(2, mDaemon.getConnections());
+    }
+
+    @Test
+    public void unansweredActionIsNotRepeated() {
+        mDaemon.reply(Reply.DROP);
+        mDaemon.reply(Reply.ok(INSPECT_BODY));
+
+        final DockerResult result = mDockerClient.stop("minecraft");
+
+        assertFalse(result.isSuccess());
+        assertTrue(result.getOutput(), result.getOutput().startsWith("The Docker daemon did not answer"));
+        assertEquals(List.of("POST /containers/minecraft/stop"), mDaemon.getRequests());
+
+        // The API is still used afterwards rather than switching to the CLI
+        assertNotNull(mDockerClient.inspect("minecraft"));
+        assertEquals("GET /containers/minecraft/json", mDaemon.getRequests().get(1));
+    }
+
+    @Test
+    public void actionAfterDaemonClosedIdleConnectionIsSentOnce() throws InterruptedException {
+        mDaemon.reply(Reply.okThenClose(INSPECT_BODY));
+        mDaemon.reply(Reply.noContent());
+
+        assertNotNull(mDockerClient.inspect("minecraft"));
+        mDaemon.awaitClosed();
+        final DockerResult result = mDockerClient.start("minecraft");
+
+        assertTrue(result.getOutput(), result.isSuccess());
+        assertEquals(
+            List.of("GET /containers/minecraft/json", "POST /containers/minecraft/start"),
+            mDaemon.getRequests());
+        assertEquals(2, mDaemon.getConnections());
+    }
+
+    @Test
+    public void keptAliveConnectionIsReused() {
+        mDaemon.reply(Reply.ok(INSPECT_BODY));
+        mDaemon.reply(Reply.noContent());
+
+        assertNotNull(mDockerClient.inspect("minecraft"));
+        assertTrue(mDockerClient.start("minecraft").isSuccess());
+
+        assertEquals(1, mDaemon.getConnections());
+    }
+
+    @Test
+    public void multiplexedStreamIsJoined() {
+        final byte[] stream = {1, 0, 0, 0, 0, 0, 0, 3, 'o', 'u', 't', 2, 0, 0, 0, 0, 0, 0, 4, '-', 'e', 'r', 'r'};
+
+        assertEquals("out-err", DockerClient.demultiplex(stream));
+        assertEquals("plain", DockerClient.demultiplex("plain\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * How the stub daemon answers one request.
+     */
+    private static final class Reply {
+        static final Reply DROP = new Reply(null, true);
+
+        private final String mResponse;
+        private final boolean mClose;
+
+        private Reply(final String response, final boolean close) {
+            mResponse = response;
+            mClose = close;
+        }
+
+        static Reply ok(final String body) {
+            return new Reply(createResponse("200 OK", body), false);
+        }
+
+        static Reply okThenClose(final String body) {
+            return new Reply(createResponse("200 OK", body), true);
+        }
+
+        static Reply noContent() {
+            return new Reply("HTTP/1.1 204 No Content\r\n\r\n", false);
+        }
+
+        private static String createResponse(final String status, final String body) {
+            return "HTTP/1.1 " + status + "\r\nContent-Type: application/json\r\nContent-Length: "
+                + body.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" + body;
+        }
+    }
+
+    /**
+     * Answers Engine API requests over HTTP/1.1 with queued replies, recording the request lines. A dropped request is
+     * read in full before the connection is closed, as a daemon that acted on it and then went away would.
+     */
+    private static final class StubDaemon implements AutoCloseable {
+        private final ServerSocket mServerSocket;
+        private final Queue<Reply> mReplies = new ConcurrentLinkedQueue<>();
+        private final List<String> mRequests = new CopyOnWriteArrayList<>();
+        private final AtomicInteger mConnections = new AtomicInteger();
+        private final Object mClosedLock = new Object();
+        private int mClosedConnections;
+
+        StubDaemon() throws IOException {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            final Thread thread = new Thread(this::serve, "stub-docker-daemon");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return mServerSocket.getLocalPort();
+        }
+
+        void reply(final Reply reply) {
+            mReplies.add(reply);
+        }
+
+        List<String> getRequests() {
+            return mRequests;
+        }
+
+        int getConnections() {
+            return mConnections.get();
+        }
+
+        /**
+         * Waits until the stub has closed a connection.
+         */
+        void awaitClosed() throws InterruptedException {
+            synchronized (mClosedLock) {
+                while (mClosedConnections == 0) {
+                    mClosedLock.wait();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            mServerSocket.close();
+        }
+
+        private void serve() {
+            while (!mServerSocket.isClosed()) {
+                try {
+                    final Socket socket = mServerSocket.accept();
+                    mConnections.incrementAndGet();
+                    final Thread thread = new Thread(() -> handle(socket), "stub-docker-connection");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (final IOException exception) {
+                    // The stub was closed
+                }
+            }
+        }
+
+        private void handle(final Socket socket) {
+            try (socket) {
+                final BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                final OutputStream outputStream = socket.getOutputStream();
+                for (String requestLine = reader.readLine(); requestLine != null; requestLine = reader.readLine()) {
+                    int contentLength = 0;
+                    for (String line = reader.readLine(); line != null && !line.isEmpty(); line = reader.readLine()) {
+                        if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                            contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                        }
+                    }
+                    reader.skip(contentLength);
+                    mRequests.add(requestLine.substring(0, requestLine.lastIndexOf(' ')));
+
+                    final Reply reply = mReplies.poll();
+                    if (reply == null || reply.mResponse == null) {
+                        break;
+                    }
+                    outputStream.write(reply.mResponse.getBytes(StandardCharsets.UTF_8));
+                    outputStream.flush();
+                    if (reply.mClose) {
+                        break;
+                    }
+                }
+            } catch (final IOException exception) {
+                // The client went away
+            }
+            synchronized (mClosedLock) {
+                mClosedConnections++;
+                mClosedLock.notifyAll();
+            }
+        }
+    }
+}
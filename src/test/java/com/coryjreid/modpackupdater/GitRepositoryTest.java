@@ -0,0 +1,133 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GitRepositoryTest {
+    private static final String BRANCH_NAME = "main";
+
+    private Path mDirectory;
+    private Git mAuthor;
+    private Path mSourcePath;
+    private String mInitialCommit;
+
+    @Before
+    public void setUp() throws IOException, GitAPIException {
+        mDirectory = Files.createTempDirectory("git-repository-test");
+        final Path remotePath = mDirectory.resolve("remote.git");
+        Git.init().setBare(true).setDirectory(remotePath.toFile()).call().close();
+
+        // Commits are made in one clone and pushed to the bare remote that the source repository pulls from
+        mAuthor = Git.cloneRepository()
+            .setURI(remotePath.toUri().toString())
+            .setDirectory(mDirectory.resolve("author").toFile())
+            .call();
+        mAuthor.checkout().setOrphan(true).setName(BRANCH_NAME).call();
+        writeFile("config/forge-common.toml", "a = 1");
+        writeFile("kubejs/server_scripts/recipes.js", "// recipes");
+        writeFile("defaultconfigs/forge-server.toml", "b = 2");
+        mInitialCommit = commitAndPush("Initial modpack").getName();
+
+        mSourcePath = mDirectory.resolve("source");
+        Git.cloneRepository()
+            .setURI(remotePath.toUri().toString())
+            .setBranch(BRANCH_NAME)
+            .setDirectory(mSourcePath.toFile())
+            .call()
+            .close();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mAuthor.close();
+        FileOperations.deleteRecursively(mDirectory);
+    }
+
+    @Test
+    public void pullReportsTheCommitsAndChangedPaths() throws IOException, GitAPIException {
+        writeFile("config/forge-common.toml", "a = 2");
+        writeFile("config/jei/jei.toml", "c = 3");
+        final String newCommit = commitAndPush("Tune configs").getName();
+
+        final GitRepository gitRepository = new GitRepository(mSourcePath, BRANCH_NAME);
+        final GitUpdate gitUpdate = gitRepository.pull();
+
+        assertTrue(gitUpdate.isChanged());
+        assertEquals(mInitialCommit, gitUpdate.getOldHead());
+        assertEquals(newCommit, gitUpdate.getNewHead());
+        assertEquals(newCommit, gitRepository.getHead());
+        assertEquals(Set.of("config/forge-common.toml", "config/jei/jei.toml"), gitUpdate.getChangedPaths());
+        assertEquals("a = 2", Files.readString(mSourcePath.resolve("config/forge-common.toml")));
+        assertTrue(gitUpdate.hasChangesUnder("config"));
+        assertFalse(gitUpdate.hasChangesUnder("kubejs"));
+        assertFalse(gitUpdate.hasChangesUnder("defaultconfigs"));
+        assertFalse(gitUpdate.hasChangesUnder("conf"));
+    }
+
+    @Test
+    public void deletedPathsCountAsChanged() throws IOException, GitAPIException {
+        mAuthor.rm().addFilepattern("kubejs/server_scripts/recipes.js").call();
+        commitAndPush("Drop the recipe script");
+
+        final GitUpdate gitUpdate = new GitRepository(mSourcePath, BRANCH_NAME).pull();
+
+        assertEquals(Set.of("kubejs/server_scripts/recipes.js"), gitUpdate.getChangedPaths());
+        assertTrue(gitUpdate.hasChangesUnder("kubejs"));
+        assertFalse(Files.exists(mSourcePath.resolve("kubejs/server_scripts/recipes.js")));
+    }
+
+    @Test
+    public void pullWithoutNewCommitsChangesNothing() throws IOException {
+        final GitUpdate gitUpdate = new GitRepository(mSourcePath, BRANCH_NAME).pull();
+
+        assertFalse(gitUpdate.isChanged());
+        assertEquals(mInitialCommit, gitUpdate.getOldHead());
+        assertEquals(mInitialCommit, gitUpdate.getNewHead());
+        assertTrue(gitUpdate.getChangedPaths().isEmpty());
+        assertFalse(gitUpdate.hasChangesUnder("config"));
+    }
+
+    @Test
+    public void missingBranchFailsThePull() throws IOException {
+        final GitRepository gitRepository = new GitRepository(mSourcePath, "missing");
+        try {
+            gitRepository.pull();
+            fail("Pulling a branch the remote does not have should fail");
+        } catch (final IOException expected) {
+            // The source repository is left as it was
+        }
+        assertEquals(mInitialCommit, gitRepository.getHead());
+    }
+
+    private void writeFile(final String path, final String contents) throws IOException, GitAPIException {
+        final Path file = mAuthor.getRepository().getWorkTree().toPath().resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+        mAuthor.add().addFilepattern(path).call();
+    }
+
+    private RevCommit commitAndPush(final String message) throws GitAPIException {
+        final RevCommit commit = mAuthor.commit()
+            .setMessage(message)
+            .setAuthor("Author", "author@example.com")
+            .setCommitter("Author", "author@example.com")
+            .call();
+        mAuthor.push().setRemote("origin").add(BRANCH_NAME).call();
+        return commit;
+    }
+}
@@ -0,0 +1,114 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.coryjreid.modpackupdater.json.InstalledManifest;
+import com.coryjreid.modpackupdater.json.Mod;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ManifestDiffTest {
+    private static final Mod KEPT = createMod(1, 10, "0123456789abcdef0123456789abcdef01234567");
+    private static final Mod UPDATED = createMod(2, 20, null);
+    private static final Mod REMOVED = createMod(3, 30, null);
+    private static final Mod ADDED = createMod(4, 40, null);
+
+    private static final List<Mod> INSTALLED_MODS = List.of(REMOVED, UPDATED, KEPT);
+    private static final List<Mod> MODPACK_MODS = List.of(
+        KEPT.toBuilder().setModFileHash(null).build(),
+        UPDATED.toBuilder().setModFileId(21).setModFileName("mod-2-21.jar").build(),
+        ADDED);
+
+    private Path mBinaryManifestFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mBinaryManifestFile = Files.createTempFile("installed_manifest", ".bin");
+        BinaryInstalledManifest.write(
+            mBinaryManifestFile,
+            InstalledManifest.builder().setMods(INSTALLED_MODS).build());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(mBinaryManifestFile);
+    }
+
+    @Test
+    public void classifiesInstalledMods() {
+        assertDiff(ManifestDiff.compute(INSTALLED_MODS, MODPACK_MODS));
+    }
+
+    @Test
+    public void classifiesMappedBinaryRecords() throws IOException {
+        assertDiff(ManifestDiff.compute(BinaryInstalledManifest.open(mBinaryManifestFile), MODPACK_MODS));
+    }
+
+    @Test
+    public void readsSingleFieldsOfBinaryRecords() throws IOException {
+        final BinaryInstalledManifest manifest = BinaryInstalledManifest.open(mBinaryManifestFile);
+
+        assertEquals(3, manifest.size());
+        assertEquals(-1, manifest.indexOf(ADDED.getModId()));
+        final int index = manifest.indexOf(KEPT.getModId());
+        assertEquals(KEPT.getFileId(), manifest.getFileId(index));
+        assertEquals(KEPT.getFileLength(), manifest.getFileLength(index));
+        assertEquals(KEPT.getFileName(), manifest.getFileName(index));
+        assertEquals(KEPT.getSha1(), manifest.getSha1(index));
+        assertNull(manifest.getSha1(manifest.indexOf(UPDATED.getModId())));
+        assertEquals(REMOVED, manifest.getMod(manifest.indexOf(REMOVED.getModId())));
+    }
+
+    @Test
+    public void negativeRecordCountIsRejected() throws IOException {
+        try (final FileChannel channel = FileChannel.open(mBinaryManifestFile, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, -1), 8);
+        }
+        try {
+            BinaryInstalledManifest.open(mBinaryManifestFile);
+            fail("A negative record count should be rejected");
+        } catch (final IOException expected) {
+            assertTrue(expected.getMessage().contains("is not a valid binary installed manifest"));
+        }
+    }
+
+    private static void assertDiff(final ManifestDiff diff) {
+        assertEquals(List.of(4), modIds(diff.getAdditions()));
+        assertEquals(List.of(2), modIds(diff.getReplacements()));
+        assertEquals(20, diff.getReplaced().get(0).getFileId());
+        assertEquals(List.of(3), modIds(diff.getRemovals()));
+        assertEquals(List.of(1), modIds(diff.getUnchanged()));
+        // The unchanged mod keeps the hash recorded when it was installed
+        assertEquals(KEPT.getSha1(), diff.getUnchanged().get(0).getSha1());
+    }
+
+    private static List<Integer> modIds(final List<Mod> mods) {
+        return mods.stream().map(Mod::getModId).collect(Collectors.toList());
+    }
+
+    private static Mod createMod(final int modId, final int fileId, final String sha1) {
+        return Mod.builder()
+            .setModProjectId(modId)
+            .setModDisplayName("Mod " + modId)
+            .setModFileName("mod-" + modId + "-" + fileId + ".jar")
+            .setModDownloadUrl("https://example.com/mod-" + modId + "-" + fileId + ".jar")
+            .setModFileLength(1000 + modId)
+            .setModFileId(fileId)
+            .setModFileHash(sha1)
+            .build();
+    }
+}
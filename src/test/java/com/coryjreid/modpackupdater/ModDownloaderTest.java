@@ -0,0 +1,257 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.coryjreid.modpackupdater.json.Mod;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModDownloaderTest {
+    private static final int FILE_LENGTH = 3 * 1024 * 1024;
+    private static final int DROP_AFTER_BYTES = 1024 * 1024;
+
+    private byte[] mContents;
+    private InterruptingHttpServer mServer;
+    private Path mDirectory;
+    private HttpTransport mHttpTransport;
+
+    @Before
+    public void setUp() throws IOException {
+        mContents = new byte[FILE_LENGTH];
+        new Random(7).nextBytes(mContents);
+        mServer = new InterruptingHttpServer(mContents, DROP_AFTER_BYTES, false);
+        mDirectory = Files.createTempDirectory("mod-downloader-test");
+        mHttpTransport = new HttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(5));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.close();
+        FileOperations.deleteRecursively(mDirectory);
+    }
+
+    @Test
+    public void retryResumesFromTheBytesAlreadyReceived() throws IOException {
+        final Mod mod = createMod();
+        final Path destination = mDirectory.resolve(mod.getFileName());
+
+        final Map<Mod, String> hashes = new ModDownloader(1, 2, mHttpTransport)
+            .download(List.of(mod), ignored -> destination);
+
+        assertEquals(mod.getSha1(), hashes.get(mod));
+        assertArrayEquals(mContents, Files.readAllBytes(destination));
+        assertEquals(2, mServer.getRangeHeaders().size());
+        assertNull(mServer.getRangeHeaders().get(0));
+        assertResumedFromReceivedBytes(mServer.getRangeHeaders().get(1));
+        assertPartialDownloadRemoved(destination);
+    }
+
+    @Test
+    public void nextRunResumesFromThePartialFileAndJournal() throws IOException {
+        final Mod mod = createMod();
+        final Path destination = mDirectory.resolve(mod.getFileName());
+
+        try {
+            new ModDownloader(1, 1, mHttpTransport).download(List.of(mod), ignored -> destination);
+            fail("The dropped connection should have failed the download");
+        } catch (final IOException expected) {
+            // The partial file and journal are kept for the next run
+        }
+        assertFalse(Files.exists(destination));
+        final long partLength = Files.size(destination.resolveSibling(mod.getFileName() + ".part"));
+        assertTrue(partLength > 0 && partLength <= DROP_AFTER_BYTES);
+        assertTrue(Files.exists(destination.resolveSibling(mod.getFileName() + ".part.journal")));
+
+        final Map<Mod, String> hashes = new ModDownloader(1, 1, mHttpTransport)
+            .download(List.of(mod), ignored -> destination);
+
+        assertEquals(mod.getSha1(), hashes.get(mod));
+        assertArrayEquals(mContents, Files.readAllBytes(destination));
+        assertEquals("bytes=" + partLength + "-", mServer.getRangeHeaders().get(1));
+        assertPartialDownloadRemoved(destination);
+    }
+
+    @Test
+    public void hashMismatchDiscardsThePartialDownload() throws IOException {
+        final Mod mod = createMod().toBuilder().setModFileHash("0000000000000000000000000000000000000000").build();
+        final Path destination = mDirectory.resolve(mod.getFileName());
+
+        try {
+            new ModDownloader(1, 2, mHttpTransport).download(List.of(mod), ignored -> destination);
+            fail("The hash mismatch should have failed the download");
+        } catch (final IOException expected) {
+            assertTrue(expected.getMessage().contains("Expected SHA-1"));
+        }
+        assertFalse(Files.exists(destination));
+        assertPartialDownloadRemoved(destination);
+    }
+
+    @Test
+    public void stalledBodyIsCutOffAndResumed() throws IOException {
+        mServer.close();
+        mServer = new InterruptingHttpServer(mContents, DROP_AFTER_BYTES, true);
+        final Mod mod = createMod();
+        final Path destination = mDirectory.resolve(mod.getFileName());
+        final HttpTransport httpTransport = new HttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(1));
+
+        final Map<Mod, String> hashes = new ModDownloader(1, 2, httpTransport)
+            .download(List.of(mod), ignored -> destination);
+
+        assertEquals(mod.getSha1(), hashes.get(mod));
+        assertArrayEquals(mContents, Files.readAllBytes(destination));
+        assertResumedFromReceivedBytes(mServer.getRangeHeaders().get(1));
+    }
+
+    private Mod createMod() {
+        return Mod.builder()
+            .setModProjectId(1)
+            .setModDisplayName("Test Mod")
+            .setModFileName("test-mod-1.0.0.jar")
+            .setModDownloadUrl("http://localhost:" + mServer.getPort() + "/test-mod-1.0.0.jar")
+            .setModFileLength(FILE_LENGTH)
+            .setModFileId(2)
+            .setModFileHash(FileOperations.toHex(FileOperations.newDigest().digest(mContents)))
+            .build();
+    }
+
+    /**
+     * The client can lose the last few bytes it buffered before the connection dropped, so the resume may start a
+     * little before the point the server stopped sending.
+     */
+    private static void assertResumedFromReceivedBytes(final String range) {
+        assertTrue(range, range.startsWith("bytes=") && range.endsWith("-"));
+        final long start = Long.parseLong(range.substring("bytes=".length(), range.length() - 1));
+        assertTrue(range, start > 0 && start <= DROP_AFTER_BYTES);
+    }
+
+    private static void assertPartialDownloadRemoved(final Path destination) {
+        assertFalse(Files.exists(destination.resolveSibling(destination.getFileName() + ".part")));
+        assertFalse(Files.exists(destination.resolveSibling(destination.getFileName() + ".part.journal")));
+    }
+
+    /**
+     * Serves one file over HTTP/1.1, honoring range requests. The first response without a range is cut off after a
+     * fixed number of bytes, either by closing the connection or by sending nothing more while keeping it open.
+     */
+    private static final class InterruptingHttpServer implements AutoCloseable {
+        private final byte[] mContents;
+        private final int mDropAfterBytes;
+        private final boolean mStall;
+        private final ServerSocket mServerSocket;
+        private final List<String> mRangeHeaders = new CopyOnWriteArrayList<>();
+        private volatile boolean mDropped;
+
+        InterruptingHttpServer(final byte[] contents, final int dropAfterBytes, final boolean stall)
+            throws IOException {
+
+            mContents = contents;
+            mDropAfterBytes = dropAfterBytes;
+            mStall = stall;
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            final Thread thread = new Thread(this::serve, "interrupting-http-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return mServerSocket.getLocalPort();
+        }
+
+        /**
+         * @return the Range header of each request received, or {@code null} for a request without one
+         */
+        List<String> getRangeHeaders() {
+            return mRangeHeaders;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mServerSocket.close();
+        }
+
+        private void serve() {
+            while (!mServerSocket.isClosed()) {
+                try {
+                    final Socket socket = mServerSocket.accept();
+                    final Thread thread = new Thread(() -> handle(socket), "interrupting-http-connection");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (final IOException exception) {
+                    // The server was closed
+                }
+            }
+        }
+
+        private void handle(final Socket socket) {
+            try (socket) {
+                respond(socket);
+            } catch (final IOException exception) {
+                // The client went away
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void respond(final Socket socket) throws IOException, InterruptedException {
+            final BufferedReader reader =
+                new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            String range = null;
+            for (String line = reader.readLine(); line != null && !line.isEmpty(); line = reader.readLine()) {
+                if (line.toLowerCase(Locale.ROOT).startsWith("range:")) {
+                    range = line.substring("range:".length()).trim();
+                }
+            }
+            mRangeHeaders.add(range);
+
+            final OutputStream outputStream = socket.getOutputStream();
+            if (range == null) {
+                outputStream.write(("HTTP/1.1 200 OK\r\nContent-Length: " + mContents.length + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+                if (mDropped) {
+                    outputStream.write(mContents);
+                } else {
+                    mDropped = true;
+                    outputStream.write(mContents, 0, mDropAfterBytes);
+                    outputStream.flush();
+                    while (mStall && !mServerSocket.isClosed()) {
+                        Thread.sleep(50);
+                    }
+                }
+            } else {
+                final int start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+                outputStream.write(String.format(
+                    "HTTP/1.1 206 Partial Content\r\nContent-Length: %s\r\nContent-Range: bytes %s-%s/%s\r\n\r\n",
+                    mContents.length - start,
+                    start,
+                    mContents.length - 1,
+                    mContents.length).getBytes(StandardCharsets.ISO_8859_1));
+                outputStream.write(mContents, start, mContents.length - start);
+            }
+            outputStream.flush();
+        }
+    }
+}
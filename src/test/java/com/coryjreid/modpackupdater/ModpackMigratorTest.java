@@ -0,0 +1,222 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModpackMigratorTest {
+    private static final String BRANCH_NAME = "main";
+
+    private Path mDirectory;
+    private Path mSourcePath;
+    private Path mServerRootPath;
+    private StubDaemon mDaemon;
+
+    @Before
+    public void setUp() throws IOException, GitAPIException {
+        mDirectory = Files.createTempDirectory("modpack-migrator-test");
+        final Path remotePath = mDirectory.resolve("remote.git");
+        Git.init().setBare(true).setDirectory(remotePath.toFile()).call().close();
+
+        try (final Git author = Git.cloneRepository()
+            .setURI(remotePath.toUri().toString())
+            .setDirectory(mDirectory.resolve("author").toFile())
+            .call()) {
+            author.checkout().setOrphan(true).setName(BRANCH_NAME).call();
+            final Path workTree = author.getRepository().getWorkTree().toPath();
+            Files.writeString(workTree.resolve("manifest.json"), "{\"name\":\"Pack\",\"version\":\"1\",\"files\":[]}");
+            Files.createDirectories(workTree.resolve("config"));
+            Files.writeString(workTree.resolve("config/forge-common.toml"), "a = 1");
+            author.add().addFilepattern(".").call();
+            author.commit()
+                .setMessage("Initial modpack")
+                .setAuthor("Author", "author@example.com")
+                .setCommitter("Author", "author@example.com")
+                .call();
+            author.push().setRemote("origin").add(BRANCH_NAME).call();
+        }
+
+        mSourcePath = mDirectory.resolve("source");
+        Git.cloneRepository()
+            .setURI(remotePath.toUri().toString())
+            .setBranch(BRANCH_NAME)
+            .setDirectory(mSourcePath.toFile())
+            .call()
+            .close();
+        mServerRootPath = Files.createDirectories(mDirectory.resolve("server"));
+        mDaemon = new StubDaemon();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mDaemon.close();
+        FileOperations.deleteRecursively(mDirectory);
+    }
+
+    @Test
+    public void playerCountIsReadFromVanillaList() {
+        assertEquals(0, ModpackMigrator.parseOnlinePlayerCount("There are 0 of a max of 20 players online: "));
+        assertEquals(
+            2,
+            ModpackMigrator.parseOnlinePlayerCount("There are 2 of a max of 20 players online: Alex, Steve"));
+    }
+
+    @Test
+    public void playerCountIsReadFromForgeList() {
+        // Forge on 1.12 and older servers print the count and maximum with a slash
+        assertEquals(0, ModpackMigrator.parseOnlinePlayerCount("There are 0/20 players online:"));
+        assertEquals(12, ModpackMigrator.parseOnlinePlayerCount("There are 12/100 players online:\nAlex, Steve"));
+    }
+
+    @Test
+    public void unreadablePlayerCountIsUnknown() {
+        assertEquals(-1, ModpackMigrator.parseOnlinePlayerCount(null));
+        assertEquals(-1, ModpackMigrator.parseOnlinePlayerCount(""));
+        assertEquals(-1, ModpackMigrator.parseOnlinePlayerCount("Unknown or incomplete command, see below for error"));
+    }
+
+    @Test
+    public void failedSyncIsUpdatedAgainByTheNextRun() throws IOException, ModpackUpdateException {
+        // A file where the config folder belongs cannot be synced to
+        Files.writeString(mServerRootPath.resolve("config"), "in the way");
+        createMigrator().doModpackUpdate(false);
+        assertFalse(Files.exists(mServerRootPath.resolve(".modpackupdater-state")));
+
+        Files.delete(mServerRootPath.resolve("config"));
+        final ModpackMigrator migrator = createMigrator();
+        migrator.doModpackUpdate(false);
+        assertEquals("restarted", migrator.getRunMetrics().getOutcome());
+        assertEquals("a = 1", Files.readString(mServerRootPath.resolve("config/forge-common.toml")));
+
+        migrator.doModpackUpdate(false);
+        assertEquals("skipped", migrator.getRunMetrics().getOutcome());
+    }
+
+    @Test
+    public void folderEditedInPlaceIsSynced() throws IOException, ModpackUpdateException {
+        final ModpackMigrator migrator = createMigrator();
+        migrator.doModpackUpdate(false);
+
+        // Untouched by the pull, but no longer what was deployed
+        Files.writeString(mSourcePath.resolve("config/forge-common.toml"), "a = 22");
+        migrator.doModpackUpdate(false);
+        assertEquals("restarted", migrator.getRunMetrics().getOutcome());
+        assertEquals("a = 22", Files.readString(mServerRootPath.resolve("config/forge-common.toml")));
+    }
+
+    @Test
+    public void runIsSkippedWhileAnotherHoldsTheLock() throws IOException, ModpackUpdateException {
+        try (final RunLock lock = RunLock.tryAcquire(mServerRootPath.resolve(".modpackupdater-lock"))) {
+            assertNotNull(lock);
+            createMigrator().doModpackUpdate(false);
+        }
+        assertFalse(Files.exists(mServerRootPath.resolve("config")));
+
+        createMigrator().doModpackUpdate(false);
+        assertTrue(Files.exists(mServerRootPath.resolve(".modpackupdater-state")));
+    }
+
+    private ModpackMigrator createMigrator() {
+        final Properties properties = new Properties();
+        properties.setProperty("paths.sourceRepository", mSourcePath.toString());
+        properties.setProperty("paths.serverRoot", mServerRootPath.toString());
+        properties.setProperty("paths.modCache", mDirectory.resolve("cache").toString());
+        properties.setProperty("docker.containerName", "minecraft");
+        properties.setProperty("git.branchName", BRANCH_NAME);
+        properties.setProperty("migrator.shutdownWarningNoticeTime", "0");
+        properties.setProperty("migrator.startupTimeout", "0");
+        properties.setProperty("minecraft.setMotd", "false");
+        final ModpackMigratorProperties migratorProperties = new ModpackMigratorProperties(properties);
+        return new ModpackMigrator(
+            migratorProperties,
+            new HttpTransport(Duration.ofSeconds(1), Duration.ofSeconds(1)),
+            ModpackMigrator.createModCache(migratorProperties),
+            new DockerClient(
+                mServerRootPath.resolve("docker.sock"),
+                () -> SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), mDaemon.getPort()))));
+    }
+
+    /**
+     * Answers every Engine API request with a running container whose commands all succeed.
+     */
+    private static final class StubDaemon implements AutoCloseable {
+        private static final String BODY = "{\"Id\":\"abc\",\"State\":{\"Running\":true},\"ExitCode\":0}";
+
+        private final ServerSocket mServerSocket;
+
+        StubDaemon() throws IOException {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            final Thread thread = new Thread(this::serve, "stub-docker-daemon");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return mServerSocket.getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mServerSocket.close();
+        }
+
+        private void serve() {
+            while (!mServerSocket.isClosed()) {
+                try {
+                    final Socket socket = mServerSocket.accept();
+                    final Thread thread = new Thread(() -> handle(socket), "stub-docker-connection");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (final IOException exception) {
+                    // The stub was closed
+                }
+            }
+        }
+
+        private static void handle(final Socket socket) {
+            try (socket) {
+                final BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                final OutputStream outputStream = socket.getOutputStream();
+                for (String requestLine = reader.readLine(); requestLine != null; requestLine = reader.readLine()) {
+                    int contentLength = 0;
+                    for (String line = reader.readLine(); line != null && !line.isEmpty(); line = reader.readLine()) {
+                        if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                            contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                        }
+                    }
+                    reader.skip(contentLength);
+                    final String response = "HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: "
+                        + BODY.length() + "\r\n\r\n" + BODY;
+                    outputStream.write(response.getBytes(StandardCharsets.US_ASCII));
+                    outputStream.flush();
+                }
+            } catch (final IOException exception) {
+                // The client went away
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.coryjreid.modpackupdater;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RconClientTest {
+    private static final String PASSWORD = "secret";
+    private static final String LIST_RESPONSE = "There are 0 of a max of 20 players online: ";
+
+    private FakeRconServer mServer;
+    private RconClient mRconClient;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new FakeRconServer();
+        mRconClient = createClient(PASSWORD);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mRconClient.close();
+        mServer.close();
+    }
+
+    @Test
+    public void commandsAreSentOneAtATime() throws IOException {
+        final List<String> responses = mRconClient.executeAll(List.of("say Restarting", "list", "reload"));
+
+        assertEquals(List.of("", LIST_RESPONSE, "Reloading!"), responses);
+        assertEquals(List.of("say Restarting", "list", "reload"), mServer.getCommands());
+        assertEquals(1, mServer.getConnections());
+    }
+
+    @Test
+    public void responseSplitOverSeveralPacketsIsJoined() throws IOException {
+        assertEquals(createText(10000), mRconClient.execute("long 10000"));
+        assertEquals(createText(4096), mRconClient.execute("long 4096"));
+        assertEquals(createText(4095), mRconClient.execute("long 4095"));
+        assertEquals(LIST_RESPONSE, mRconClient.execute("list"));
+    }
+
+    @Test
+    public void sessionIsReusedAndReopenedOnceLost() throws IOException {
+        assertEquals(LIST_RESPONSE, mRconClient.execute("list"));
+        assertEquals(LIST_RESPONSE, mRconClient.execute("list"));
+        assertEquals(1, mServer.getConnections());
+
+        mServer.dropSessions();
+        assertEquals(LIST_RESPONSE, mRconClient.execute("list"));
+        assertEquals(2, mServer.getConnections());
+    }
+
+    @Test
+    public void slowCommandIsGivenItsOwnTimeout() throws IOException {
+        try (final RconClient rconClient =
+            new RconClient("127.0.0.1", mServer.getPort(), PASSWORD, Duration.ofMillis(200))) {
+            try {
+                rconClient.execute("sleep 1000");
+                fail("A response slower than the timeout should fail the command");
+            } catch (final SocketTimeoutException expected) {
+                // The session is dropped along with the late response
+            }
+            assertEquals(List.of("Reloaded"), rconClient.executeAll(List.of("sleep 1000"), Duration.ofSeconds(5)));
+        }
+    }
+
+    @Test
+    public void rejectedPasswordFails() {
+        final RconClient rconClient = createClient("wrong");
+        try {
+            rconClient.execute("list");
+            fail("A wrong password should fail the command");
+        } catch (final IOException expected) {
+            assertTrue(expected.getMessage().contains("was rejected"));
+        } finally {
+            rconClient.close();
+        }
+        assertTrue(mServer.getCommands().isEmpty());
+    }
+
+    private RconClient createClient(final String password) {
+        return new RconClient("127.0.0.1", mServer.getPort(), password, Duration.ofSeconds(5));
+    }
+
+    private static String createText(final int length) {
+        final StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Answers RCON the way a vanilla server does: each read handles only the first packet received and drops the rest,
+     * responses are split into packets of up to 4096 bytes, and a packet of an unknown type gets an error response.
+     * {@code long <n>} answers with {@code n} bytes of text, and {@code sleep <n>} answers after {@code n}
+     * milliseconds.
+     */
+    private static final class FakeRconServer implements AutoCloseable {
+        private static final int READ_BUFFER_SIZE = 1460;
+        private static final int MAX_RESPONSE_BODY_BYTES = 4096;
+
+        private final ServerSocket mServerSocket;
+        private final List<String> mCommands = new CopyOnWriteArrayList<>();
+        private final List<Socket> mSessions = new CopyOnWriteArrayList<>();
+        private final AtomicInteger mConnections = new AtomicInteger();
+
+        FakeRconServer() throws IOException {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            final Thread thread = new Thread(this::serve, "fake-rcon-server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return mServerSocket.getLocalPort();
+        }
+
+        List<String> getCommands() {
+            return mCommands;
+        }
+
+        int getConnections() {
+            return mConnections.get();
+        }
+
+        /**
+         * Closes every open session, as a server restart or an idle timeout would.
+         */
+        void dropSessions() throws IOException {
+            for (final Socket session : mSessions) {
+                session.close();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            mServerSocket.close();
+            dropSessions();
+        }
+
+        private void serve() {
+            while (!mServerSocket.isClosed()) {
+                try {
+                    final Socket socket = mServerSocket.accept();
+                    mConnections.incrementAndGet();
+                    mSessions.add(socket);
+                    final Thread thread = new Thread(() -> handle(socket), "fake-rcon-session");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (final IOException exception) {
+                    // The server was closed
+                }
+            }
+        }
+
+        private void handle(final Socket socket) {
+            try (socket) {
+                final InputStream inputStream = socket.getInputStream();
+                final OutputStream outputStream = socket.getOutputStream();
+                final byte[] buffer = new byte[READ_BUFFER_SIZE];
+                boolean authenticated = false;
+                for (int length = inputStream.read(buffer); length >= 14; length = inputStream.read(buffer)) {
+                    final ByteBuffer packet = ByteBuffer.wrap(buffer, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+                    final int bodyLength = packet.getInt() - 10;
+                    final int requestId = packet.getInt();
+                    final int type = packet.getInt();
+                    final String body = new String(buffer, 12, bodyLength, StandardCharsets.UTF_8);
+
+                    if (type == 3) {
+                        authenticated = PASSWORD.equals(body);
+                        writePacket(outputStream, authenticated ? requestId : -1, 2, new byte[0]);
+                    } else if (!authenticated) {
+                        writePacket(outputStream, -1, 2, new byte[0]);
+                    } else if (type == 2) {
+                        mCommands.add(body);
+                        writeResponse(outputStream, requestId, respond(body));
+                    } else {
+                        writeResponse(outputStream, requestId, "Unknown request " + Integer.toHexString(type));
+                    }
+                }
+            } catch (final IOException exception) {
+                // The session was closed
+            }
+        }
+
+        private static String respond(final String command) {
+            if (command.equals("list")) {
+                return LIST_RESPONSE;
+            }
+            if (command.equals("reload")) {
+                return "Reloading!";
+            }
+            if (command.startsWith("sleep ")) {
+                try {
+                    Thread.sleep(Long.parseLong(command.substring("sleep ".length())));
+                } catch (final InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+                return "Reloaded";
+            }
+            if (command.startsWith("long ")) {
+                return createText(Integer.parseInt(command.substring("long ".length())));
+            }
+            return "";
+        }
+
+        private static void writeResponse(final OutputStream outputStream, final int requestId, final String response)
+            throws IOException {
+
+            final byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            int offset = 0;
+            do {
+                final int length = Math.min(MAX_RESPONSE_BODY_BYTES, bytes.length - offset);
+                final byte[] body = new byte[length];
+                System.arraycopy(bytes, offset, body, 0, length);
+                writePacket(outputStream, requestId, 0, body);
+                offset += length;
+            } while (offset < bytes.length);
+        }
+
+        private static void writePacket(
+            final OutputStream outputStream,
+            final int requestId,
+            final int type,
+            final byte[] body) throws IOException {
+
+            final ByteBuffer packet = ByteBuffer.allocate(14 + body.length).order(ByteOrder.LITTLE_ENDIAN);
+            packet.putInt(10 + body.length).putInt(requestId).putInt(type).put(body).put((byte) 0).put((byte) 0);
+            outputStream.write(packet.array());
+            outputStream.flush();
+        }
+    }
+}
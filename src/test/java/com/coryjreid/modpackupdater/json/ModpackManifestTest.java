@@ -0,0 +1,73 @@
+package com.coryjreid.modpackupdater.json;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ModpackManifestTest {
+    private static final String MOD = "{\"modId\": 1, \"fileId\": 2, \"fileName\": \"a.jar\", \"fileLength\": 3,"
+        + " \"downloadUrl\": \"https://example.com/a.jar\", \"sha1\": \"abc\"}";
+
+    private Path mManifestFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mManifestFile = Files.createTempFile("manifest", ".json");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(mManifestFile);
+    }
+
+    @Test
+    public void readsTheManifestAndEveryMod() throws IOException {
+        final ModpackManifest manifest = read("{\"minecraft\": {\"version\": \"1.16.5\", \"modLoaders\":"
+            + " [{\"id\": \"forge-36.1.0\", \"primary\": true}]}, \"manifestType\": \"minecraftModpack\","
+            + " \"manifestVersion\": 1, \"name\": \"Pack\", \"version\": \"1.0\", \"author\": \"someone\","
+            + " \"projectID\": 7, \"overrides\": \"overrides\", \"files\": [" + MOD + ", " + MOD + "]}");
+
+        assertEquals("1.16.5", manifest.getMinecraft().getMinecraftVersion());
+        assertEquals("Pack", manifest.getModpackName());
+        assertEquals("1.0", manifest.getModpackVersion());
+        assertEquals(7, manifest.getModpackProjectId());
+        assertEquals(2, manifest.getModFiles().size());
+        final Mod mod = List.copyOf(manifest.getModFiles()).get(0);
+        assertEquals(1, mod.getModId());
+        assertEquals(2, mod.getFileId());
+        assertEquals("a.jar", mod.getFileName());
+        assertEquals("abc", mod.getSha1());
+    }
+
+    @Test
+    public void nullModEntryFailsTheRead() {
+        assertReadFails("{\"files\": [" + MOD + ", null, " + MOD + "]}");
+    }
+
+    @Test
+    public void nonObjectModEntryFailsTheRead() {
+        assertReadFails("{\"files\": [" + MOD + ", \"a.jar\", " + MOD + "]}");
+    }
+
+    private ModpackManifest read(final String json) throws IOException {
+        Files.writeString(mManifestFile, json);
+        return ModpackManifest.deserializeFromFile(mManifestFile.toFile());
+    }
+
+    private void assertReadFails(final String json) {
+        try {
+            read(json);
+            fail("The manifest should not have been read");
+        } catch (final IOException expected) {
+            // Jackson reports the entry that is not a mod
+        }
+    }
+}